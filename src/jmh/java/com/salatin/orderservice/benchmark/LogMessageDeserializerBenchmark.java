@@ -0,0 +1,62 @@
+package com.salatin.orderservice.benchmark;
+
+import com.salatin.orderservice.model.dto.LogMessage;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+/**
+ * Decodes order log records with the deserializer configured as in KafkaConfig,
+ * where the type comes from the type id header.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogMessageDeserializerBenchmark {
+    private static final String TOPIC = "orderLogs";
+
+    private JsonDeserializer<LogMessage> deserializer;
+    private RecordHeaders headers;
+    private byte[] record;
+
+    @Setup
+    public void setUp() {
+        deserializer = new JsonDeserializer<>();
+        deserializer.configure(Map.of(
+                JsonDeserializer.TRUSTED_PACKAGES, "com.salatin.*",
+                JsonDeserializer.TYPE_MAPPINGS, "message:com.salatin.orderservice.model.dto.LogMessage"), false);
+
+        headers = new RecordHeaders();
+        headers.add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, "message".getBytes(StandardCharsets.UTF_8));
+        record = ("{\"from\":\"2d0f5cbe-6f1c-4a4f-9d38-4c1d3c1c7f11\","
+                + "\"text\":\"Brake pads replaced, test drive is scheduled for tomorrow\","
+                + "\"time\":\"2026-10-18T10:15:30\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        deserializer.close();
+    }
+
+    @Benchmark
+    public LogMessage deserialize() {
+        return deserializer.deserialize(TOPIC, headers, record);
+    }
+}
@@ -0,0 +1,92 @@
+package com.salatin.orderservice.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.salatin.orderservice.model.dto.response.OrderResponseDto;
+import com.salatin.orderservice.service.mapper.OrderMapper;
+import com.salatin.orderservice.service.mapper.OrderMapperImpl;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Compares the formats a page of orders can be requested in. Encoding and decoding are
+ * measured here, the payload size of each format is reported as the payloadBytes secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBinaryFormatsBenchmark {
+    private static final TypeReference<List<OrderResponseDto>> PAGE_TYPE = new TypeReference<>() {
+    };
+
+    @Param({"JSON", "CBOR", "SMILE"})
+    private String format;
+    @Param({"10", "100"})
+    private int logs;
+    @Param({"10", "100"})
+    private int orders;
+
+    private ObjectMapper objectMapper;
+    private List<OrderResponseDto> page;
+    private byte[] encodedPage;
+
+    @Setup
+    public void setUp() throws IOException {
+        var builder = switch (format) {
+            case "CBOR" -> Jackson2ObjectMapperBuilder.cbor();
+            case "SMILE" -> Jackson2ObjectMapperBuilder.smile();
+            default -> Jackson2ObjectMapperBuilder.json();
+        };
+        // the same settings as the ObjectMapper auto-configured by Spring Boot
+        objectMapper = builder
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        OrderMapper orderMapper = new OrderMapperImpl();
+        page = OrderFixtures.createOrders(orders, logs, 5, 5).stream()
+                .map(orderMapper::toDto)
+                .toList();
+        encodedPage = objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] encodePage(PayloadSize payloadSize) throws IOException {
+        var encoded = objectMapper.writeValueAsBytes(page);
+        payloadSize.payloadBytes = encoded.length;
+        return encoded;
+    }
+
+    @Benchmark
+    public List<OrderResponseDto> decodePage(PayloadSize payloadSize) throws IOException {
+        payloadSize.payloadBytes = encodedPage.length;
+        return objectMapper.readValue(encodedPage, PAGE_TYPE);
+    }
+
+    /**
+     * Holds the size of the page in the benchmarked format, JMH reports the public field
+     * next to the timing so it also ends up in the result file.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long payloadBytes;
+    }
+}
@@ -0,0 +1,75 @@
+package com.salatin.orderservice.benchmark;
+
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.model.dto.LogMessage;
+import com.salatin.orderservice.model.dto.Part;
+import com.salatin.orderservice.model.dto.Work;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Orders shaped like the ones in production: a few parts and works, and a log that grows
+ * with every message from the repair shop.
+ */
+final class OrderFixtures {
+
+    private OrderFixtures() {}
+
+    static Order createOrder(int logs, int parts, int works) {
+        var now = LocalDateTime.now();
+        var order = new Order();
+        order.setId(UUID.randomUUID().toString());
+        order.setCreatedAt(now.minusDays(3));
+        order.setSubmittedAt(now.minusDays(3).plusHours(1));
+        order.setCarReceivedAt(now.minusDays(2));
+        order.setStartedWorksAt(now.minusDays(1));
+        order.setStatus(OrderStatus.IN_PROGRESS);
+        order.setCarId(UUID.randomUUID().toString());
+        order.setCustomerId(UUID.randomUUID().toString());
+        order.setManagerId(UUID.randomUUID().toString());
+        order.setMechanicId(UUID.randomUUID().toString());
+        order.setComplaints("Knocking noise from the front suspension when driving over bumps");
+        order.setTotalCost(new BigDecimal("1250.00"));
+        order.setDiscount(new BigDecimal("50.00"));
+        order.setToPay(new BigDecimal("1200.00"));
+
+        for (int i = 0; i < parts; i++) {
+            var part = new Part();
+            part.setId((long) i);
+            part.setName("Stabilizer link " + i);
+            part.setBrand("Lemforder");
+            part.setOemNumber(31306781 + i);
+            order.getParts().add(part);
+        }
+        for (int i = 0; i < works; i++) {
+            var work = new Work();
+            work.setId((long) i);
+            work.setName("Replacement of stabilizer link " + i);
+            work.setSpentHours(1.5);
+            work.setPricePerHour(new BigDecimal("40.00"));
+            work.setTotal(new BigDecimal("60.00"));
+            work.setDescription("Front left and right links replaced, torque checked");
+            order.getWorks().add(work);
+        }
+        for (int i = 0; i < logs; i++) {
+            var logMessage = new LogMessage();
+            logMessage.setFrom(order.getMechanicId());
+            logMessage.setText("Diagnostics step " + i + " finished, no further issues found");
+            logMessage.setTime(now.minusMinutes(logs - i));
+            order.getLogs().add(logMessage);
+        }
+        return order;
+    }
+
+    static List<Order> createOrders(int count, int logs, int parts, int works) {
+        var orders = new ArrayList<Order>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(createOrder(logs, parts, works));
+        }
+        return orders;
+    }
+}
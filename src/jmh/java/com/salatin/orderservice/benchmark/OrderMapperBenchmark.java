@@ -0,0 +1,44 @@
+package com.salatin.orderservice.benchmark;
+
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.dto.response.OrderResponseDto;
+import com.salatin.orderservice.service.mapper.OrderMapper;
+import com.salatin.orderservice.service.mapper.OrderMapperImpl;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderMapperBenchmark {
+    @Param({"10", "100", "1000"})
+    private int logs;
+    @Param({"5", "30"})
+    private int items;
+
+    private final OrderMapper orderMapper = new OrderMapperImpl();
+    private Order order;
+
+    @Setup
+    public void setUp() {
+        order = OrderFixtures.createOrder(logs, items, items);
+    }
+
+    @Benchmark
+    public OrderResponseDto toDto() {
+        return orderMapper.toDto(order);
+    }
+}
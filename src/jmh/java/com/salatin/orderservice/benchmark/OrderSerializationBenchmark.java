@@ -0,0 +1,95 @@
+package com.salatin.orderservice.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.salatin.orderservice.model.dto.response.OrderResponseDto;
+import com.salatin.orderservice.service.mapper.OrderMapper;
+import com.salatin.orderservice.service.mapper.OrderMapperImpl;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+/**
+ * Serializes orders the way WebFlux writes them: one order, a page as a JSON array
+ * and a stream as NDJSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderSerializationBenchmark {
+    private static final ResolvableType ORDER_TYPE = ResolvableType.forClass(OrderResponseDto.class);
+
+    @Param({"10", "100"})
+    private int logs;
+    @Param({"10", "100"})
+    private int orders;
+
+    private ObjectMapper objectMapper;
+    private Jackson2JsonEncoder encoder;
+    private OrderResponseDto order;
+    private List<OrderResponseDto> page;
+
+    @Setup
+    public void setUp() {
+        // the same settings as the ObjectMapper auto-configured by Spring Boot
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        encoder = new Jackson2JsonEncoder(objectMapper);
+
+        OrderMapper orderMapper = new OrderMapperImpl();
+        page = OrderFixtures.createOrders(orders, logs, 5, 5).stream()
+                .map(orderMapper::toDto)
+                .toList();
+        order = page.get(0);
+    }
+
+    @Benchmark
+    public byte[] serializeOrder() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(order);
+    }
+
+    @Benchmark
+    public Integer encodeFluxAsArray() {
+        return encode(MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public Integer encodeFluxAsNdjson() {
+        return encode(MediaType.APPLICATION_NDJSON);
+    }
+
+    private Integer encode(MediaType mediaType) {
+        return encoder.encode(Flux.fromIterable(page), DefaultDataBufferFactory.sharedInstance,
+                        ORDER_TYPE, mediaType, Map.of())
+                .map(buffer -> {
+                    var bytes = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return bytes;
+                })
+                .reduce(0, Integer::sum)
+                .block();
+    }
+}
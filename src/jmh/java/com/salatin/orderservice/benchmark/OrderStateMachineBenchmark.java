@@ -0,0 +1,53 @@
+package com.salatin.orderservice.benchmark;
+
+import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.util.OrderStateMachine;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Transition checks done for every status change, and for every order of a bulk update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderStateMachineBenchmark {
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    @Param({"SUBMITTED", "IN_PROGRESS", "CANCELED"})
+    private OrderStatus target;
+
+    @Benchmark
+    public Map<OrderStateMachine.Effects, Set<OrderStatus>> findSourcesByEffects() {
+        return OrderStateMachine.findSourcesByEffects(target);
+    }
+
+    @Benchmark
+    public void isAllowedFromEveryStatus(Blackhole blackhole) {
+        for (var source : STATUSES) {
+            blackhole.consume(OrderStateMachine.isAllowed(source, target));
+        }
+    }
+
+    @Benchmark
+    public void getEffectsFromEveryStatus(Blackhole blackhole) {
+        for (var source : STATUSES) {
+            blackhole.consume(OrderStateMachine.getEffects(source, target));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.salatin.orderservice.benchmark;
+
+import com.salatin.orderservice.model.RoleJwtAuthenticationToken;
+import com.salatin.orderservice.util.RoleChecker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoleCheckerBenchmark {
+    /**
+     * CUSTOMER has no manager role, MANAGER has it among the usual Keycloak defaults,
+     * MANY_ROLES has it last after a long list of realm and client roles.
+     */
+    @Param({"CUSTOMER", "MANAGER", "MANY_ROLES"})
+    private String authoritySet;
+
+    private JwtAuthenticationToken authenticationToken;
+    private JwtAuthenticationToken roleAuthenticationToken;
+
+    @Setup
+    public void setUp() {
+        var authorities = new ArrayList<GrantedAuthority>(List.of(
+                new SimpleGrantedAuthority("ROLE_offline_access"),
+                new SimpleGrantedAuthority("ROLE_uma_authorization"),
+                new SimpleGrantedAuthority("ROLE_default-roles-car-repair-realm")));
+        switch (authoritySet) {
+            case "CUSTOMER" -> authorities.add(new SimpleGrantedAuthority("ROLE_customer"));
+            case "MANAGER" -> authorities.add(new SimpleGrantedAuthority("ROLE_manager"));
+            default -> {
+                for (int i = 0; i < 30; i++) {
+                    authorities.add(new SimpleGrantedAuthority("ROLE_client-role-" + i));
+                }
+                authorities.add(new SimpleGrantedAuthority("ROLE_manager"));
+            }
+        }
+
+        var jwt = Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .subject("2d0f5cbe-6f1c-4a4f-9d38-4c1d3c1c7f11")
+                .claim("roles", List.of("manager"))
+                .build();
+        authenticationToken = new JwtAuthenticationToken(jwt, authorities);
+        roleAuthenticationToken = new RoleJwtAuthenticationToken(jwt, authorities);
+    }
+
+    @Benchmark
+    public boolean hasRoleManager() {
+        return RoleChecker.hasRoleManager(authenticationToken);
+    }
+
+    @Benchmark
+    public boolean hasRoleManagerResolved() {
+        return RoleChecker.hasRoleManager(roleAuthenticationToken);
+    }
+}
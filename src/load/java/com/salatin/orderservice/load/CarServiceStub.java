@@ -0,0 +1,54 @@
+package com.salatin.orderservice.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salatin.orderservice.model.dto.Car;
+import java.nio.charset.StandardCharsets;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Answers GET /cars/{carId} like car-service. Car ids are made as {@code <ownerId>-car-<n>},
+ * so the owner is known without any state.
+ */
+class CarServiceStub {
+    static final String CAR_ID_SEPARATOR = "-car-";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private DisposableServer server;
+
+    int start() {
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.get("/cars/{carId}", (request, response) -> {
+                    var carId = request.param("carId");
+                    if (carId == null || !carId.contains(CAR_ID_SEPARATOR)) {
+                        return response.status(404).send();
+                    }
+                    return response.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .sendString(Mono.fromCallable(() -> objectMapper.writeValueAsString(createCar(carId))),
+                                    StandardCharsets.UTF_8);
+                }))
+                .bindNow();
+
+        return server.port();
+    }
+
+    void stop() {
+        server.disposeNow();
+    }
+
+    private Car createCar(String carId) {
+        var car = new Car();
+        car.setId(carId);
+        car.setBrand("Skoda");
+        car.setModel("Octavia");
+        car.setLicencePlate("AA" + Math.floorMod(carId.hashCode(), 10000) + "BB");
+        car.setProductionYear((short) 2019);
+        car.setVin("TMBJJ7NE5K0" + Math.floorMod(carId.hashCode(), 1000000));
+        car.setOwnerId(carId.substring(0, carId.indexOf(CAR_ID_SEPARATOR)));
+        return car;
+    }
+}
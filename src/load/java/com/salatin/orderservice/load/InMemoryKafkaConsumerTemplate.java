@@ -0,0 +1,72 @@
+package com.salatin.orderservice.load;
+
+import com.salatin.orderservice.model.dto.LogMessage;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.kafka.receiver.ReceiverOffset;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.receiver.ReceiverRecord;
+
+/**
+ * Feeds OrderLogMessageConsumer with records published in the same process instead of a broker.
+ * Records of one order go to the same partition, as with the order id as the Kafka key.
+ */
+class InMemoryKafkaConsumerTemplate extends ReactiveKafkaConsumerTemplate<String, LogMessage> {
+    private static final String TOPIC = "orderLogs";
+    private static final int PARTITIONS = 8;
+
+    private final Sinks.Many<ReceiverRecord<String, LogMessage>> records =
+            Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicLong offset = new AtomicLong();
+
+    InMemoryKafkaConsumerTemplate() {
+        super(ReceiverOptions.<String, LogMessage>create(Map.of(
+                        ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092",
+                        ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
+                        ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class))
+                .subscription(List.of(TOPIC)));
+    }
+
+    void publish(String orderId, LogMessage logMessage) {
+        var partition = new TopicPartition(TOPIC, Math.floorMod(orderId.hashCode(), PARTITIONS));
+        var consumerRecord = new ConsumerRecord<>(TOPIC, partition.partition(), offset.incrementAndGet(),
+                orderId, logMessage);
+
+        records.emitNext(new ReceiverRecord<>(consumerRecord, new Offset(partition, consumerRecord.offset())),
+                Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+    }
+
+    @Override
+    public Flux<ReceiverRecord<String, LogMessage>> receive() {
+        return records.asFlux();
+    }
+
+    @Override
+    public <T> Mono<T> doOnConsumer(Function<Consumer<String, LogMessage>, ? extends T> function) {
+        return Mono.empty();
+    }
+
+    private record Offset(TopicPartition topicPartition, long offset) implements ReceiverOffset {
+        @Override
+        public void acknowledge() {
+        }
+
+        @Override
+        public Mono<Void> commit() {
+            return Mono.empty();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.salatin.orderservice.load;
+
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderCursor;
+import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.model.OrderStatusUpdate;
+import com.salatin.orderservice.model.dto.LogMessage;
+import com.salatin.orderservice.service.OrderService;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Orders kept in memory with the semantics of OrderServiceImpl: status updates are applied only
+ * from the expected statuses and return the order as it was, listings are sorted with the id as
+ * a tie-breaker, every write increments the version. Orders are also indexed by creation time,
+ * so the default listings don't sort.
+ */
+class InMemoryOrderService implements OrderService {
+    private static final String CREATED_AT_FIELD = "createdAt";
+    private static final String ID_FIELD = "id";
+
+    private final Map<String, Order> orders = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<CreationKey, Order> ordersByCreation = new ConcurrentSkipListMap<>();
+    private final AtomicLong persistedLogs = new AtomicLong();
+
+    long getPersistedLogs() {
+        return persistedLogs.get();
+    }
+
+    int size() {
+        return orders.size();
+    }
+
+    @Override
+    public Mono<Order> save(Order order) {
+        return Mono.fromSupplier(() -> {
+            if (order.getId() == null) {
+                order.setId(new ObjectId().toHexString());
+            }
+            if (order.getCreatedAt() == null) {
+                order.setCreatedAt(LocalDateTime.now());
+            }
+            incrementVersion(order);
+            orders.put(order.getId(), order);
+            ordersByCreation.put(new CreationKey(order.getCreatedAt(), order.getId()), order);
+            return copy(order);
+        });
+    }
+
+    @Override
+    public Mono<Order> findById(String id) {
+        return Mono.justOrEmpty(orders.get(id)).map(this::copy);
+    }
+
+    @Override
+    public <T> Flux<T> findAll(PageRequest pageRequest, Class<T> type) {
+        return findPage(order -> true, pageRequest, type);
+    }
+
+    @Override
+    public <T> Flux<T> findAllAfter(OrderCursor cursor, PageRequest pageRequest, Class<T> type) {
+        return findPage(isAfter(cursor), pageRequest, type);
+    }
+
+    @Override
+    public <T> Flux<T> findAllByStatus(PageRequest pageRequest, String status, Class<T> type) {
+        return findPage(hasStatus(status), pageRequest, type);
+    }
+
+    @Override
+    public <T> Flux<T> findAllByStatusAfter(OrderCursor cursor, PageRequest pageRequest, String status,
+                                            Class<T> type) {
+        return findPage(hasStatus(status).and(isAfter(cursor)), pageRequest, type);
+    }
+
+    @Override
+    public Mono<Boolean> hasOpenOrderForCar(String carId) {
+        var openStatuses = OrderStatus.openStatuses();
+
+        return Mono.fromSupplier(() -> orders.values().stream()
+                .anyMatch(order -> carId.equals(order.getCarId()) && openStatuses.contains(order.getStatus())));
+    }
+
+    @Override
+    public <T> Flux<T> findAllByUser(String userId, PageRequest pageRequest, Class<T> type) {
+        return findPage(order -> userId.equals(order.getCustomerId()), pageRequest, type);
+    }
+
+    @Override
+    public <T> Flux<T> findAllByUserAfter(String userId, OrderCursor cursor, PageRequest pageRequest,
+                                          Class<T> type) {
+        return findPage(((Predicate<Order>) order -> userId.equals(order.getCustomerId())).and(isAfter(cursor)),
+                pageRequest, type);
+    }
+
+    @Override
+    public Mono<OrderStatus> findStatusById(String id) {
+        return Mono.justOrEmpty(orders.get(id)).map(Order::getStatus);
+    }
+
+    @Override
+    public Mono<Long> findVersionById(String id) {
+        return Mono.justOrEmpty(orders.get(id)).map(Order::getVersion);
+    }
+
+    @Override
+    public Mono<Order> updateStatusIfIn(String id, Set<OrderStatus> expectedStatuses, Update update) {
+        return Mono.fromSupplier(() -> {
+            var order = orders.get(id);
+            if (order == null) {
+                return null;
+            }
+            synchronized (order) {
+                if (!expectedStatuses.contains(order.getStatus())) {
+                    return null;
+                }
+                var previous = copy(order);
+                applyUpdate(order, update);
+                return previous;
+            }
+        });
+    }
+
+    @Override
+    public Mono<Map<String, Order>> findAllWithStatusByIds(Collection<String> ids) {
+        return Flux.fromIterable(ids)
+                .mapNotNull(orders::get)
+                .map(this::copy)
+                .collectMap(Order::getId);
+    }
+
+    @Override
+    public Mono<Long> updateStatuses(List<OrderStatusUpdate> statusUpdates) {
+        return Flux.fromIterable(statusUpdates)
+                .flatMap(statusUpdate -> updateStatusIfIn(statusUpdate.getOrderId(),
+                        Set.of(statusUpdate.getExpectedStatus()), statusUpdate.getUpdate()))
+                .count();
+    }
+
+    @Override
+    public Optional<OrderCursor> createCursor(Object order, Sort sort) {
+        var sortOrder = sort.iterator().next();
+        var orderWrapper = new BeanWrapperImpl(order);
+
+        if (!orderWrapper.isReadableProperty(sortOrder.getProperty())) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new OrderCursor(sortOrder.getProperty(), sortOrder.getDirection(),
+                toMongoValue(orderWrapper.getPropertyValue(sortOrder.getProperty())),
+                (String) orderWrapper.getPropertyValue(ID_FIELD)));
+    }
+
+    @Override
+    public Mono<Void> addLogsToOrders(Map<String, List<LogMessage>> logsByOrderId) {
+        return Mono.fromRunnable(() -> logsByOrderId.forEach((orderId, logs) -> {
+            var order = orders.get(orderId);
+            if (order != null) {
+                synchronized (order) {
+                    // same as the filter on logs.logId in Mongo, a replayed push is skipped
+                    var written = order.getLogs().stream()
+                            .anyMatch(logMessage -> logMessage.getLogId() != null && logs.stream()
+                                    .anyMatch(newLog -> logMessage.getLogId().equals(newLog.getLogId())));
+                    if (!written) {
+                        order.getLogs().addAll(logs);
+                        incrementVersion(order);
+                    }
+                }
+            }
+            persistedLogs.addAndGet(logs.size());
+        }));
+    }
+
+    private <T> Flux<T> findPage(Predicate<Order> filter, PageRequest pageRequest, Class<T> type) {
+        return Flux.defer(() -> Flux.fromStream(sorted(pageRequest.getSort())
+                .filter(filter)
+                .skip(pageRequest.getOffset())
+                .limit(pageRequest.getPageSize())
+                .map(order -> convert(order, type))));
+    }
+
+    /**
+     * Walks the creation index for the default sort and sorts a snapshot for any other field.
+     */
+    private Stream<Order> sorted(Sort sort) {
+        var sortOrder = sort.iterator().next();
+        if (CREATED_AT_FIELD.equals(sortOrder.getProperty())) {
+            return (sortOrder.isAscending() ? ordersByCreation : ordersByCreation.descendingMap())
+                    .values().stream();
+        }
+
+        Comparator<Order> comparator = Comparator.comparing(order -> sortValue(order, sortOrder.getProperty()),
+                Comparator.nullsFirst(Comparator.naturalOrder()));
+        comparator = comparator.thenComparing(Order::getId);
+
+        return orders.values().stream()
+                .sorted(sortOrder.isAscending() ? comparator : comparator.reversed());
+    }
+
+    private Predicate<Order> hasStatus(String status) {
+        return order -> order.getStatus() != null && order.getStatus().name().equals(status);
+    }
+
+    private Predicate<Order> isAfter(OrderCursor cursor) {
+        Comparator<Comparable<Object>> nullsFirst = Comparator.nullsFirst(Comparator.naturalOrder());
+        @SuppressWarnings("unchecked")
+        var cursorValue = (Comparable<Object>) cursor.getValue();
+
+        return order -> {
+            var comparison = nullsFirst.compare(sortValue(order, cursor.getSortField()), cursorValue);
+            if (comparison == 0) {
+                comparison = order.getId().compareTo(cursor.getId());
+            }
+            return cursor.getDirection().isAscending() ? comparison > 0 : comparison < 0;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparable<Object> sortValue(Order order, String field) {
+        return (Comparable<Object>) toMongoValue(new BeanWrapperImpl(order).getPropertyValue(field));
+    }
+
+    /**
+     * Same representation as the cursors created by OrderServiceImpl, so they survive encoding.
+     */
+    private Object toMongoValue(Object value) {
+        if (value instanceof LocalDateTime dateTime) {
+            return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+        }
+        if (value instanceof Enum<?> enumValue) {
+            return enumValue.name();
+        }
+        return value;
+    }
+
+    private void applyUpdate(Order order, Update update) {
+        var orderWrapper = new BeanWrapperImpl(order);
+        update.getUpdateObject().get("$set", Document.class).forEach(orderWrapper::setPropertyValue);
+        incrementVersion(order);
+    }
+
+    private void incrementVersion(Order order) {
+        order.setVersion(order.getVersion() == null ? 0 : order.getVersion() + 1);
+    }
+
+    private <T> T convert(Order order, Class<T> type) {
+        synchronized (order) {
+            var result = BeanUtils.instantiateClass(type);
+            BeanUtils.copyProperties(order, result);
+            if (result instanceof Order orderCopy) {
+                orderCopy.setLogs(new ArrayList<>(order.getLogs()));
+            }
+            return result;
+        }
+    }
+
+    private Order copy(Order order) {
+        return convert(order, Order.class);
+    }
+
+    private record CreationKey(LocalDateTime createdAt, String id) implements Comparable<CreationKey> {
+        @Override
+        public int compareTo(CreationKey other) {
+            var comparison = createdAt.compareTo(other.createdAt);
+
+            return comparison != 0 ? comparison : Objects.compare(id, other.id, Comparator.naturalOrder());
+        }
+    }
+}
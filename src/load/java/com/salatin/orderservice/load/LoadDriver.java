@@ -0,0 +1,306 @@
+package com.salatin.orderservice.load;
+
+import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.model.dto.LogMessage;
+import com.salatin.orderservice.model.dto.response.OrderResponseDto;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.HdrHistogram.Recorder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Sends a mix of operations at a fixed rate whatever the response times are. Latency is measured
+ * from the moment a request was due, so a slow service can't hide queueing behind a slower client.
+ * Created orders are moved through submit, car receiving, start and completion by later
+ * transition operations.
+ */
+class LoadDriver {
+    private static final Duration TICK = Duration.ofMillis(10);
+    private static final int RECENT_ORDERS = 1024;
+    private static final String LOG_ENDPOINT = "KAFKA orderLogs";
+
+    enum Operation {
+        CREATE,
+        TRANSITION,
+        LIST,
+        GET,
+        LOG
+    }
+
+    private final LoadSettings settings;
+    private final InMemoryKafkaConsumerTemplate kafka;
+    private final WebClient webClient;
+    private final Operation[] operations;
+    private final List<User> customers = new ArrayList<>();
+    private final List<User> managers = new ArrayList<>();
+    private final List<User> mechanics = new ArrayList<>();
+    private final Queue<TrackedOrder> pipeline = new ConcurrentLinkedQueue<>();
+    private final AtomicReferenceArray<String> recentOrders = new AtomicReferenceArray<>(RECENT_ORDERS);
+    private final AtomicLong createdOrders = new AtomicLong();
+    private final AtomicLong sentRequests = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    LoadDriver(LoadSettings settings, String baseUrl, TokenIssuer tokenIssuer, InMemoryKafkaConsumerTemplate kafka) {
+        this.settings = settings;
+        this.kafka = kafka;
+
+        var connectionProvider = ConnectionProvider.builder("load-driver")
+                .maxConnections(settings.maxInFlight())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .build();
+
+        var ttl = settings.warmup().plus(settings.duration()).plusHours(1);
+        for (int i = 0; i < settings.customers(); i++) {
+            customers.add(User.create("customer", tokenIssuer, ttl));
+        }
+        for (int i = 0; i < 5; i++) {
+            managers.add(User.create("manager", tokenIssuer, ttl));
+        }
+        for (int i = 0; i < 20; i++) {
+            mechanics.add(User.create("mechanic", tokenIssuer, ttl));
+        }
+
+        var weighted = new ArrayList<Operation>();
+        settings.mix().forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        });
+        operations = weighted.toArray(Operation[]::new);
+    }
+
+    /**
+     * Runs the warmup, resets the statistics and runs the measured period.
+     */
+    Map<String, EndpointStats> run() {
+        drive(settings.warmup());
+        stats.values().forEach(EndpointStats::reset);
+        drive(settings.duration());
+        return stats;
+    }
+
+    private void drive(Duration duration) {
+        var startNanos = System.nanoTime();
+        var endNanos = startNanos + duration.toNanos();
+        var requestsBefore = sentRequests.get();
+
+        Flux.interval(TICK)
+                .map(tick -> System.nanoTime())
+                .takeWhile(now -> now < endNanos)
+                .concatMapIterable(now -> {
+                    // catch up with the schedule, so a late tick doesn't lower the rate
+                    var due = requestsBefore + (now - startNanos) * settings.rate() / 1_000_000_000L;
+                    var requests = new ArrayList<Long>();
+                    while (sentRequests.get() < due) {
+                        sentRequests.incrementAndGet();
+                        requests.add(now);
+                    }
+                    return requests;
+                })
+                .flatMap(this::send, Integer.MAX_VALUE)
+                .blockLast(duration.plusMinutes(1));
+    }
+
+    private Mono<Void> send(long dueNanos) {
+        var operation = operations[ThreadLocalRandom.current().nextInt(operations.length)];
+
+        if (inFlight.get() >= settings.maxInFlight()) {
+            getStats(operation.name() + " (rejected by driver)").recordError();
+            return Mono.empty();
+        }
+
+        return switch (operation) {
+            case CREATE -> create(dueNanos);
+            case TRANSITION -> transition(dueNanos);
+            case LIST -> list(dueNanos);
+            case GET -> get(dueNanos);
+            case LOG -> log(dueNanos);
+        };
+    }
+
+    private Mono<Void> create(long dueNanos) {
+        var customer = random(customers);
+        var carId = customer.id() + CarServiceStub.CAR_ID_SEPARATOR + createdOrders.incrementAndGet();
+        var request = webClient.post()
+                .uri("/orders")
+                .header(HttpHeaders.AUTHORIZATION, customer.authorization())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("carId", carId, "complaints", "Knocking noise from the front suspension"))
+                .retrieve()
+                .bodyToMono(OrderResponseDto.class)
+                .doOnNext(order -> {
+                    recentOrders.set((int) Math.floorMod(createdOrders.get(), (long) RECENT_ORDERS), order.getId());
+                    pipeline.add(new TrackedOrder(order.getId(), OrderStatus.CREATED, random(mechanics)));
+                });
+
+        return measure("POST /orders", dueNanos, request);
+    }
+
+    private Mono<Void> transition(long dueNanos) {
+        var order = pipeline.poll();
+        if (order == null) {
+            return create(dueNanos);
+        }
+
+        var next = switch (order.status()) {
+            case CREATED -> new Step("/submit", random(managers), OrderStatus.SUBMITTED);
+            case SUBMITTED -> new Step("/accept-car-receiving", random(managers), OrderStatus.CAR_RECEIVED);
+            case CAR_RECEIVED -> new Step("/start-work", order.mechanic(), OrderStatus.IN_PROGRESS);
+            default -> new Step("/complete-work", order.mechanic(), OrderStatus.COMPLETED);
+        };
+        var request = webClient.put()
+                .uri("/orders/{orderId}" + next.path(), order.id())
+                .header(HttpHeaders.AUTHORIZATION, next.user().authorization())
+                .retrieve()
+                .toBodilessEntity()
+                .doOnNext(response -> {
+                    if (next.status() != OrderStatus.COMPLETED) {
+                        pipeline.add(new TrackedOrder(order.id(), next.status(), order.mechanic()));
+                    }
+                });
+
+        return measure("PUT /orders/{orderId}" + next.path(), dueNanos, request);
+    }
+
+    private Mono<Void> list(long dueNanos) {
+        return switch (ThreadLocalRandom.current().nextInt(3)) {
+            case 0 -> measure("GET /orders", dueNanos, webClient.get()
+                    .uri("/orders?size=20&sortByField=createdAt&direction=DESC")
+                    .header(HttpHeaders.AUTHORIZATION, random(managers).authorization())
+                    .retrieve()
+                    .toBodilessEntity());
+            case 1 -> measure("GET /orders/by-status", dueNanos, webClient.get()
+                    .uri("/orders/by-status?status=IN_PROGRESS&size=20")
+                    .header(HttpHeaders.AUTHORIZATION, random(mechanics).authorization())
+                    .retrieve()
+                    .toBodilessEntity());
+            default -> {
+                var customer = random(customers);
+                yield measure("GET /orders/customer/{userId}", dueNanos, webClient.get()
+                        .uri("/orders/customer/{userId}?size=10", customer.id())
+                        .header(HttpHeaders.AUTHORIZATION, customer.authorization())
+                        .retrieve()
+                        .toBodilessEntity());
+            }
+        };
+    }
+
+    private Mono<Void> get(long dueNanos) {
+        var orderId = randomRecentOrder();
+        if (orderId == null) {
+            return create(dueNanos);
+        }
+
+        return measure("GET /orders/{orderId}", dueNanos, webClient.get()
+                .uri("/orders/{orderId}", orderId)
+                .header(HttpHeaders.AUTHORIZATION, random(managers).authorization())
+                .retrieve()
+                .toBodilessEntity());
+    }
+
+    private Mono<Void> log(long dueNanos) {
+        var orderId = randomRecentOrder();
+        if (orderId == null) {
+            return create(dueNanos);
+        }
+
+        return measure(LOG_ENDPOINT, dueNanos, Mono.fromRunnable(() -> {
+            var logMessage = new LogMessage();
+            logMessage.setFrom(random(mechanics).id());
+            logMessage.setText("Diagnostics finished, waiting for parts");
+            kafka.publish(orderId, logMessage);
+        }));
+    }
+
+    private Mono<Void> measure(String endpoint, long dueNanos, Mono<?> request) {
+        var endpointStats = getStats(endpoint);
+
+        return Mono.defer(() -> {
+                    inFlight.incrementAndGet();
+                    return request;
+                })
+                .doOnSuccess(result -> endpointStats.recordLatency(System.nanoTime() - dueNanos))
+                .doOnError(e -> endpointStats.recordError())
+                .doFinally(signal -> inFlight.decrementAndGet())
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private EndpointStats getStats(String endpoint) {
+        return stats.computeIfAbsent(endpoint, key -> new EndpointStats());
+    }
+
+    private String randomRecentOrder() {
+        var known = (int) Math.min(createdOrders.get(), RECENT_ORDERS);
+
+        return known == 0 ? null : recentOrders.get(ThreadLocalRandom.current().nextInt(known));
+    }
+
+    private static <T> T random(List<T> items) {
+        return items.get(ThreadLocalRandom.current().nextInt(items.size()));
+    }
+
+    /**
+     * Latencies in microseconds, recorded without locks from any thread.
+     */
+    static class EndpointStats {
+        private final Recorder recorder = new Recorder(3);
+        private final AtomicLong errors = new AtomicLong();
+
+        void recordLatency(long nanos) {
+            recorder.recordValue(Math.max(nanos / 1000, 1));
+        }
+
+        void recordError() {
+            errors.incrementAndGet();
+        }
+
+        void reset() {
+            recorder.reset();
+            errors.set(0);
+        }
+
+        Recorder getRecorder() {
+            return recorder;
+        }
+
+        long getErrors() {
+            return errors.get();
+        }
+    }
+
+    private record User(String id, String authorization) {
+        static User create(String role, TokenIssuer tokenIssuer, Duration ttl) {
+            var id = UUID.randomUUID().toString();
+            return new User(id, "Bearer " + tokenIssuer.issue(id, role, ttl));
+        }
+    }
+
+    private record TrackedOrder(String id, OrderStatus status, User mechanic) {
+    }
+
+    private record Step(String path, User user, OrderStatus status) {
+    }
+}
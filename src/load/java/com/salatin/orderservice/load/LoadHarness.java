@@ -0,0 +1,213 @@
+package com.salatin.orderservice.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.salatin.orderservice.OrderServiceApplication;
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.service.OrderService;
+import com.salatin.orderservice.service.OrderStageHistogramService;
+import com.salatin.orderservice.service.OrderStatisticsService;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.AbstractReactiveTransactionManager;
+import org.springframework.transaction.reactive.GenericReactiveTransaction;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * Boots order-service on a random port with in-process stand-ins for its dependencies and drives
+ * mixed traffic at a target rate, see {@link LoadSettings} for the knobs.
+ * <ul>
+ *     <li>orders are kept by {@link InMemoryOrderService} in place of the Mongo backed OrderService,
+ *     counters and stage histograms are switched off as they write to Mongo directly, and transactions
+ *     are only begun and committed in name</li>
+ *     <li>car-service is {@link CarServiceStub}, found through the simple discovery client</li>
+ *     <li>tokens are signed by {@link TokenIssuer} and checked with its public key instead of Keycloak</li>
+ *     <li>log messages are fed to OrderLogMessageConsumer by {@link InMemoryKafkaConsumerTemplate}</li>
+ * </ul>
+ * Throughput and p50/p99/p999 latency per endpoint are printed and written as JSON.
+ * Arguments are passed to the application, for example {@code --car-service.hedging.enabled=false}.
+ */
+public final class LoadHarness {
+
+    private LoadHarness() {}
+
+    public static void main(String[] args) throws IOException {
+        var settings = LoadSettings.fromSystemProperties();
+        var tokenIssuer = new TokenIssuer();
+        var carService = new CarServiceStub();
+        var carServicePort = carService.start();
+        var orderService = new InMemoryOrderService();
+        var kafka = new InMemoryKafkaConsumerTemplate();
+
+        // devtools would restart the application in another class loader, without the stand-ins
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        var context = new SpringApplicationBuilder(OrderServiceApplication.class)
+                .initializers(applicationContext -> {
+                    var beans = (GenericApplicationContext) applicationContext;
+                    beans.registerBean(OrderService.class, () -> orderService,
+                            definition -> definition.setPrimary(true));
+                    beans.registerBean(ReactiveKafkaConsumerTemplate.class, () -> kafka,
+                            definition -> definition.setPrimary(true));
+                    beans.registerBean(ReactiveJwtDecoder.class,
+                            () -> NimbusReactiveJwtDecoder.withPublicKey(tokenIssuer.getPublicKey()).build());
+                    beans.registerBean(OrderStatisticsService.class, NoOpOrderStatisticsService::new,
+                            definition -> definition.setPrimary(true));
+                    beans.registerBean(OrderStageHistogramService.class, NoOpOrderStageHistogramService::new,
+                            definition -> definition.setPrimary(true));
+                    beans.registerBean(ReactiveTransactionManager.class, NoOpTransactionManager::new,
+                            definition -> definition.setPrimary(true));
+                })
+                // passed as arguments to take precedence over application.properties
+                .run(Stream.concat(Stream.of(
+                                "--server.port=0",
+                                "--eureka.client.enabled=false",
+                                "--spring.cloud.discovery.client.simple.instances.car-service[0].uri="
+                                        + "http://localhost:" + carServicePort,
+                                "--spring.data.mongodb.auto-index-creation=false",
+                                "--mongodb.indexes.verification=off",
+                                "--orders.statistics.reconciliation-delay=365d",
+                                "--orders.outbox.enabled=false",
+                                "--logging.level.root=WARN"),
+                        Arrays.stream(args))
+                        .toArray(String[]::new));
+
+        try {
+            var port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            var driver = new LoadDriver(settings, "http://localhost:" + port, tokenIssuer, kafka);
+            System.out.printf("Driving %d req/s for %s after %s of warmup%n",
+                    settings.rate(), settings.duration(), settings.warmup());
+
+            var report = createReport(driver.run(), settings.duration());
+            awaitLogs(orderService, report);
+            print(report, System.out);
+            write(report, Path.of(settings.report()));
+        } finally {
+            context.close();
+            carService.stop();
+        }
+    }
+
+    private static Map<String, Map<String, Object>> createReport(Map<String, LoadDriver.EndpointStats> stats,
+                                                                 Duration duration) {
+        var report = new TreeMap<String, Map<String, Object>>();
+        stats.forEach((endpoint, endpointStats) -> {
+            var histogram = endpointStats.getRecorder().getIntervalHistogram();
+            var row = new LinkedHashMap<String, Object>();
+            row.put("requests", histogram.getTotalCount());
+            row.put("errors", endpointStats.getErrors());
+            row.put("throughput", histogram.getTotalCount() * 1000.0 / duration.toMillis());
+            row.put("p50Ms", histogram.getValueAtPercentile(50) / 1000.0);
+            row.put("p99Ms", histogram.getValueAtPercentile(99) / 1000.0);
+            row.put("p999Ms", histogram.getValueAtPercentile(99.9) / 1000.0);
+            row.put("maxMs", histogram.getMaxValue() / 1000.0);
+            report.put(endpoint, row);
+        });
+        return report;
+    }
+
+    /**
+     * Log messages are written asynchronously, the report shows how many reached the orders.
+     */
+    private static void awaitLogs(InMemoryOrderService orderService, Map<String, Map<String, Object>> report) {
+        var published = report.getOrDefault("KAFKA orderLogs", Map.of()).getOrDefault("requests", 0L);
+        var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (orderService.getPersistedLogs() < (long) published && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(Duration.ofMillis(50).toNanos());
+        }
+        report.computeIfPresent("KAFKA orderLogs", (endpoint, row) -> {
+            row.put("persisted", orderService.getPersistedLogs());
+            return row;
+        });
+    }
+
+    private static void print(Map<String, Map<String, Object>> report, PrintStream out) {
+        out.printf("%-40s %10s %8s %10s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        report.forEach((endpoint, row) -> out.printf("%-40s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                endpoint, row.get("requests"), row.get("errors"), row.get("throughput"),
+                row.get("p50Ms"), row.get("p99Ms"), row.get("p999Ms"), row.get("maxMs")));
+    }
+
+    private static void write(Map<String, Map<String, Object>> report, Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), report);
+    }
+
+    private static class NoOpOrderStatisticsService extends OrderStatisticsService {
+        NoOpOrderStatisticsService() {
+            super(null, null);
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public Mono<Void> recordCreation(Order order) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> recordTransitions(List<Tuple2<Order, Order>> transitions) {
+            return Mono.empty();
+        }
+    }
+
+    private static class NoOpTransactionManager extends AbstractReactiveTransactionManager {
+        @Override
+        protected Object doGetTransaction(TransactionSynchronizationManager synchronizationManager) {
+            return new Object();
+        }
+
+        @Override
+        protected Mono<Void> doBegin(TransactionSynchronizationManager synchronizationManager,
+                                     Object transaction,
+                                     TransactionDefinition definition) {
+            return Mono.empty();
+        }
+
+        @Override
+        protected Mono<Void> doCommit(TransactionSynchronizationManager synchronizationManager,
+                                      GenericReactiveTransaction status) {
+            return Mono.empty();
+        }
+
+        @Override
+        protected Mono<Void> doRollback(TransactionSynchronizationManager synchronizationManager,
+                                        GenericReactiveTransaction status) {
+            return Mono.empty();
+        }
+    }
+
+    private static class NoOpOrderStageHistogramService extends OrderStageHistogramService {
+        NoOpOrderStageHistogramService() {
+            super(null, null);
+        }
+
+        @Override
+        public Mono<Void> recordTransitions(List<Tuple2<Order, Order>> transitions) {
+            return Mono.empty();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.salatin.orderservice.load;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Harness settings read from system properties, for example
+ * {@code -Dload.rate=500 -Dload.duration=2m -Dload.mix=create:10,transition:30,list:30,get:20,log:10}.
+ */
+record LoadSettings(int rate,
+                    Duration warmup,
+                    Duration duration,
+                    Map<LoadDriver.Operation, Integer> mix,
+                    int maxInFlight,
+                    int customers,
+                    String report) {
+
+    static LoadSettings fromSystemProperties() {
+        return new LoadSettings(
+                Integer.getInteger("load.rate", 200),
+                DurationStyle.detectAndParse(System.getProperty("load.warmup", "10s")),
+                DurationStyle.detectAndParse(System.getProperty("load.duration", "60s")),
+                parseMix(System.getProperty("load.mix", "create:15,transition:30,list:25,get:20,log:10")),
+                Integer.getInteger("load.max-in-flight", 2000),
+                Integer.getInteger("load.customers", 200),
+                System.getProperty("load.report", "target/load-report.json"));
+    }
+
+    private static Map<LoadDriver.Operation, Integer> parseMix(String mix) {
+        var weights = new EnumMap<LoadDriver.Operation, Integer>(LoadDriver.Operation.class);
+        for (var entry : mix.split(",")) {
+            var parts = entry.trim().split(":");
+            weights.put(LoadDriver.Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,54 @@
+package com.salatin.orderservice.load;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Signs JWTs with the "roles" claim the way the Keycloak realm does, with a key generated per run.
+ */
+class TokenIssuer {
+    private final KeyPair keyPair;
+
+    TokenIssuer() {
+        try {
+            var generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            keyPair = generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA is not available", e);
+        }
+    }
+
+    RSAPublicKey getPublicKey() {
+        return (RSAPublicKey) keyPair.getPublic();
+    }
+
+    String issue(String userId, String role, Duration ttl) {
+        var claims = new JWTClaimsSet.Builder()
+                .subject(userId)
+                .issuer("load-harness")
+                .issueTime(new Date())
+                .expirationTime(Date.from(Instant.now().plus(ttl)))
+                .claim("roles", List.of(role))
+                .build();
+        var jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.RS256), claims);
+        try {
+            jwt.sign(new RSASSASigner(keyPair.getPrivate()));
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Can't sign the token", e);
+        }
+        return jwt.serialize();
+    }
+}
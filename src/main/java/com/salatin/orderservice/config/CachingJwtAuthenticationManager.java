@@ -0,0 +1,128 @@
+package com.salatin.orderservice.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.salatin.orderservice.model.RoleJwtAuthenticationToken;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtReactiveAuthenticationManager;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Verifies bearer tokens once and keeps the resulting authentication until the token expires,
+ * clients reuse one token for many calls. Entries are keyed by the SHA-256 of the token, so raw
+ * tokens aren't kept in memory, and live no longer than the configured maximum. Failed
+ * verifications aren't cached. Roles are taken from the {@code roles} claim and resolved on the token.
+ */
+@Component
+@RequiredArgsConstructor
+public class CachingJwtAuthenticationManager implements ReactiveAuthenticationManager {
+    private static final String VERIFICATION_METRIC = "security.jwt.verification";
+
+    private final ReactiveJwtDecoder jwtDecoder;
+    private final MeterRegistry meterRegistry;
+    @Value("${security.jwt.cache.max-size:10000}")
+    private long cacheMaxSize;
+    @Value("${security.jwt.cache.max-ttl:1h}")
+    private Duration cacheMaxTtl;
+    private ReactiveAuthenticationManager delegate;
+    private Cache<String, Authentication> authentications;
+
+    @PostConstruct
+    public void init() {
+        var jwtGrantedAuthoritiesConverter = new JwtGrantedAuthoritiesConverter();
+        jwtGrantedAuthoritiesConverter.setAuthorityPrefix("ROLE_");
+        jwtGrantedAuthoritiesConverter.setAuthoritiesClaimName("roles");
+
+        var authenticationManager = new JwtReactiveAuthenticationManager(jwtDecoder);
+        authenticationManager.setJwtAuthenticationConverter(jwt -> Mono.just(
+                new RoleJwtAuthenticationToken(jwt, jwtGrantedAuthoritiesConverter.convert(jwt))));
+        delegate = authenticationManager;
+        authentications = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new UntilTokenExpires())
+                .recordStats()
+                .<String, Authentication>build(), "security.jwt.authentications");
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        if (!(authentication instanceof BearerTokenAuthenticationToken bearerToken)) {
+            return delegate.authenticate(authentication);
+        }
+
+        var key = hash(bearerToken.getToken());
+        var cached = authentications.getIfPresent(key);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+
+        return Mono.defer(() -> {
+            var sample = Timer.start(meterRegistry);
+
+            return delegate.authenticate(authentication)
+                    .doOnNext(verified -> {
+                        sample.stop(meterRegistry.timer(VERIFICATION_METRIC, "outcome", "SUCCESS"));
+                        authentications.put(key, verified);
+                    })
+                    .doOnError(throwable -> sample.stop(
+                            meterRegistry.timer(VERIFICATION_METRIC, "outcome", "ERROR")));
+        });
+    }
+
+    private static String hash(String token) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private class UntilTokenExpires implements Expiry<String, Authentication> {
+
+        @Override
+        public long expireAfterCreate(String key, Authentication authentication, long currentTime) {
+            var expiresAt = authentication instanceof JwtAuthenticationToken jwtToken
+                    ? jwtToken.getToken().getExpiresAt()
+                    : null;
+            if (expiresAt == null) {
+                return cacheMaxTtl.toNanos();
+            }
+
+            var untilExpiry = Duration.between(Instant.now(), expiresAt);
+            return Math.max(0, Math.min(untilExpiry.toNanos(), cacheMaxTtl.toNanos()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Authentication authentication, long currentTime,
+                                      long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Authentication authentication, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.salatin.orderservice.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Lets internal callers ask for orders as CBOR or Smile with the Accept header, JSON stays
+ * the default. The binary mappers get the same customizations as the JSON one, so dates
+ * and numbers are written the same way. CBOR is only written as a single value, which is
+ * why listings return whole pages instead of streams.
+ */
+@Configuration
+public class CodecConfig {
+
+    @Bean
+    @ConditionalOnClass(name = "com.fasterxml.jackson.dataformat.cbor.CBORFactory")
+    public CodecCustomizer cborCodecCustomizer(ObjectProvider<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+        var objectMapper = customize(Jackson2ObjectMapperBuilder.cbor(), customizers).build();
+
+        return configurer -> {
+            configurer.customCodecs().register(new Jackson2CborEncoder(objectMapper));
+            configurer.customCodecs().register(new Jackson2CborDecoder(objectMapper));
+        };
+    }
+
+    @Bean
+    @ConditionalOnClass(name = "com.fasterxml.jackson.dataformat.smile.SmileFactory")
+    public CodecCustomizer smileCodecCustomizer(ObjectProvider<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+        var objectMapper = customize(Jackson2ObjectMapperBuilder.smile(), customizers).build();
+
+        // Spring registers Smile on its own when present, but with a mapper that knows nothing of Boot
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(objectMapper));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(objectMapper));
+        };
+    }
+
+    private Jackson2ObjectMapperBuilder customize(Jackson2ObjectMapperBuilder builder,
+                                                  ObjectProvider<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+        customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+        return builder;
+    }
+}
@@ -1,17 +1,26 @@
 package com.salatin.orderservice.config;
 
+import com.salatin.orderservice.model.OrderEvent;
 import com.salatin.orderservice.model.dto.LogMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Map;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
 import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.sender.MicrometerProducerListener;
+import reactor.kafka.sender.SenderOptions;
 
 @Configuration
 public class KafkaConfig {
@@ -19,6 +28,14 @@ public class KafkaConfig {
     private String bootstrapServer;
     @Value("${kafka.groupid.consumer.messages}")
     private String groupMessageConsumerId;
+    @Value("${kafka.consumer.order-logs.max-deferred-commits:10000}")
+    private int maxDeferredCommits;
+    @Value("${kafka.producer.order-events.linger:20ms}")
+    private Duration orderEventsLinger;
+    @Value("${kafka.producer.order-events.batch-size:65536}")
+    private int orderEventsBatchSize;
+    @Value("${kafka.producer.order-events.compression:lz4}")
+    private String orderEventsCompression;
 
     @Bean
     public ReactiveKafkaConsumerTemplate<String, LogMessage> reactiveKafkaConsumerTemplate(
@@ -41,6 +58,36 @@ public class KafkaConfig {
 
         ReceiverOptions<String, LogMessage> basicReceiverOptions = ReceiverOptions.create(props);
 
-        return basicReceiverOptions.subscription(Collections.singletonList(topic));
+        // lanes acknowledge out of order, deferred commits keep the committed offset
+        // below the oldest record that isn't persisted yet
+        return basicReceiverOptions
+                .maxDeferredCommits(maxDeferredCommits)
+                .subscription(Collections.singletonList(topic));
+    }
+
+    @Bean
+    public ReactiveKafkaProducerTemplate<String, OrderEvent> orderEventProducerTemplate(
+            KafkaProperties kafkaProperties,
+            MeterRegistry meterRegistry) {
+
+        Map<String, Object> props = kafkaProperties.buildProducerProperties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        props.put(JsonSerializer.TYPE_MAPPINGS, "orderEvent:com.salatin.orderservice.model.OrderEvent");
+        // retries neither duplicate nor reorder events of an order within a partition
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, (int) orderEventsLinger.toMillis());
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, orderEventsBatchSize);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, orderEventsCompression);
+
+        // a failed event must not stop the rest of the relayed batch
+        SenderOptions<String, OrderEvent> senderOptions = SenderOptions.<String, OrderEvent>create(props)
+                .stopOnError(false)
+                .producerListener(new MicrometerProducerListener(meterRegistry));
+
+        return new ReactiveKafkaProducerTemplate<>(senderOptions);
     }
 }
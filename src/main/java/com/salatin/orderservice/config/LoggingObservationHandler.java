@@ -0,0 +1,42 @@
+package com.salatin.orderservice.config;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Writes every finished observation to the log with its parent, duration and tags.
+ * Meant for local runs without a tracing backend.
+ */
+@Log4j2
+public class LoggingObservationHandler implements ObservationHandler<Observation.Context> {
+    private static final String START_NANOS = LoggingObservationHandler.class.getName() + ".start";
+
+    @Override
+    public void onStart(Observation.Context context) {
+        context.put(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void onStop(Observation.Context context) {
+        long durationMicros = (System.nanoTime() - context.<Long>getRequired(START_NANOS)) / 1_000;
+        var parent = context.getParentObservation();
+
+        log.info("Span {} [{}] parent={} took {}us tags={}{}",
+                context.getName(),
+                context.getContextualName(),
+                parent == null ? "-" : parent.getContextView().getName(),
+                durationMicros,
+                StreamSupport.stream(context.getAllKeyValues().spliterator(), false)
+                        .map(keyValue -> keyValue.getKey() + "=" + keyValue.getValue())
+                        .collect(Collectors.joining(",", "{", "}")),
+                context.getError() == null ? "" : " error=" + context.getError());
+    }
+
+    @Override
+    public boolean supportsContext(Observation.Context context) {
+        return true;
+    }
+}
@@ -1,9 +1,26 @@
 package com.salatin.orderservice.config;
 
+import com.mongodb.ReadConcern;
+import com.mongodb.TransactionOptions;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
 import org.springframework.data.mongodb.config.EnableReactiveMongoAuditing;
 
 @Configuration
 @EnableReactiveMongoAuditing
 public class MongoConfig {
+
+    /**
+     * Order writes and the counters they change are written in one transaction, which needs
+     * a replica set. Reads in a transaction see one snapshot of the data.
+     */
+    @Bean
+    public ReactiveMongoTransactionManager reactiveMongoTransactionManager(
+            ReactiveMongoDatabaseFactory databaseFactory) {
+        return new ReactiveMongoTransactionManager(databaseFactory, TransactionOptions.builder()
+                .readConcern(ReadConcern.SNAPSHOT)
+                .build());
+    }
 }
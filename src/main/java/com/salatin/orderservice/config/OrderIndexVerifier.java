@@ -0,0 +1,112 @@
+package com.salatin.orderservice.config;
+
+import com.salatin.orderservice.model.Order;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Compares the indexes declared on {@link Order} with the live ones once the application has started
+ * and checks that every query shape used to list orders has an index starting with its keys.
+ * Index creation runs asynchronously on startup, so the check is delayed a bit. In fail mode
+ * startup waits for the check and is aborted when it fails or can't be done, otherwise the
+ * result is only logged.
+ */
+@Component
+@RequiredArgsConstructor
+@Log4j2
+public class OrderIndexVerifier implements ApplicationRunner {
+    private static final String MODE_OFF = "off";
+    private static final String MODE_FAIL = "fail";
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final Map<String, List<String>> QUERY_PATTERNS = Map.of(
+            "findAll(sort by createdAt)", List.of("createdAt"),
+            "findAllByStatus(sort by createdAt)", List.of("status", "createdAt"),
+            "findAllByUser(sort by createdAt)", List.of("customerId", "createdAt"),
+            "existsByCarIdAndStatusIn", List.of("carId", "status"));
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    @Value("${mongodb.indexes.verification:log}")
+    private String verificationMode;
+    @Value("${mongodb.indexes.verification-delay:5s}")
+    private Duration verificationDelay;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (MODE_OFF.equalsIgnoreCase(verificationMode)) {
+            return;
+        }
+
+        var liveIndexes = Mono.delay(verificationDelay)
+                .thenMany(mongoTemplate.indexOps(Order.class).getIndexInfo())
+                .collectList()
+                .timeout(TIMEOUT);
+
+        if (MODE_FAIL.equalsIgnoreCase(verificationMode)) {
+            compareWithDeclared(liveIndexes.block());
+            return;
+        }
+
+        liveIndexes.subscribe(this::compareWithDeclared,
+                throwable -> log.warn("Can't verify indexes of the orders collection: {}",
+                        throwable.getMessage()));
+    }
+
+    private void compareWithDeclared(List<IndexInfo> liveIndexes) {
+        var liveNames = liveIndexes.stream()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toSet());
+        var missingDeclared = resolveDeclaredIndexNames().stream()
+                .filter(name -> !liveNames.contains(name))
+                .toList();
+        var unsupportedQueries = QUERY_PATTERNS.entrySet().stream()
+                .filter(pattern -> liveIndexes.stream()
+                        .noneMatch(index -> startsWithKeys(index, pattern.getValue())))
+                .map(Map.Entry::getKey)
+                .toList();
+
+        if (missingDeclared.isEmpty() && unsupportedQueries.isEmpty()) {
+            log.info("All {} declared indexes of the orders collection are in place", liveNames.size());
+            return;
+        }
+
+        log.error("Orders collection misses declared indexes {}, queries without a supporting index: {}",
+                missingDeclared, unsupportedQueries);
+
+        if (MODE_FAIL.equalsIgnoreCase(verificationMode)) {
+            throw new IllegalStateException("Indexes of the orders collection don't match the declared ones");
+        }
+    }
+
+    private Set<String> resolveDeclaredIndexNames() {
+        var indexResolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+
+        return StreamSupport.stream(indexResolver.resolveIndexFor(Order.class).spliterator(), false)
+                .map(IndexDefinition::getIndexOptions)
+                .map(options -> options.getString("name"))
+                .collect(Collectors.toSet());
+    }
+
+    private boolean startsWithKeys(IndexInfo index, List<String> keys) {
+        var indexKeys = index.getIndexFields().stream()
+                .map(IndexField::getKey)
+                .toList();
+
+        return indexKeys.size() >= keys.size() && indexKeys.subList(0, keys.size()).equals(keys);
+    }
+}
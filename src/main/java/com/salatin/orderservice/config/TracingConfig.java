@@ -0,0 +1,41 @@
+package com.salatin.orderservice.config;
+
+import io.micrometer.observation.ObservationRegistry;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.observability.ContextProviderFactory;
+import org.springframework.data.mongodb.observability.MongoObservationCommandListener;
+
+/**
+ * Spans are exported by the reporter found on the classpath (Zipkin by default), the log
+ * exporter can be switched on for local runs. HTTP server requests and car-service calls are
+ * observed by Spring, Mongo commands are observed here and Kafka records in
+ * {@link com.salatin.orderservice.service.OrderLogMessageConsumer}.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoObservationCustomizer(
+            ObservationRegistry observationRegistry) {
+        return builder -> builder
+                .contextProvider(ContextProviderFactory.create(observationRegistry))
+                .addCommandListener(new MongoObservationCommandListener(observationRegistry));
+    }
+
+    @Bean
+    public TracingSamplingWebFilter tracingSamplingWebFilter(
+            @Value("#{${orders.tracing.sampling.endpoints:{:}}}") Map<String, Double> probabilitiesByPath) {
+        return new TracingSamplingWebFilter(probabilitiesByPath);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "orders.tracing.log-exporter.enabled", havingValue = "true")
+    public LoggingObservationHandler loggingObservationHandler() {
+        return new LoggingObservationHandler();
+    }
+}
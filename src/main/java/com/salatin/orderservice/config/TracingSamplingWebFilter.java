@@ -0,0 +1,63 @@
+package com.salatin.orderservice.config;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+/**
+ * Makes the sampling decision for requests matching one of the configured path patterns
+ * and passes it to the tracer as a sampling-only B3 header. Requests that already carry
+ * trace context keep the caller's decision, other requests use the global probability.
+ * Runs before the server observation filter, which starts the request span.
+ */
+public class TracingSamplingWebFilter implements WebFilter, Ordered {
+    private static final String B3_HEADER = "b3";
+    private static final List<String> TRACE_HEADERS = List.of(B3_HEADER, "X-B3-TraceId", "traceparent");
+
+    private final List<Rule> rules;
+
+    public TracingSamplingWebFilter(Map<String, Double> probabilitiesByPath) {
+        this.rules = probabilitiesByPath.entrySet().stream()
+                .map(entry -> new Rule(PathPatternParser.defaultInstance.parse(entry.getKey()), entry.getValue()))
+                .toList();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var request = exchange.getRequest();
+        if (hasTraceContext(request)) {
+            return chain.filter(exchange);
+        }
+
+        return rules.stream()
+                .filter(rule -> rule.pattern().matches(request.getPath().pathWithinApplication()))
+                .findFirst()
+                .map(rule -> chain.filter(exchange.mutate()
+                        .request(builder -> builder.header(B3_HEADER, rule.sample() ? "1" : "0"))
+                        .build()))
+                .orElseGet(() -> chain.filter(exchange));
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    private boolean hasTraceContext(ServerHttpRequest request) {
+        return TRACE_HEADERS.stream().anyMatch(request.getHeaders()::containsKey);
+    }
+
+    private record Rule(PathPattern pattern, double probability) {
+        boolean sample() {
+            return ThreadLocalRandom.current().nextDouble() < probability;
+        }
+    }
+}
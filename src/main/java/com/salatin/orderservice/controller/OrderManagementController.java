@@ -1,5 +1,7 @@
 package com.salatin.orderservice.controller;
 
+import com.salatin.orderservice.model.dto.request.BulkStatusUpdateRequestDto;
+import com.salatin.orderservice.model.dto.response.BulkStatusUpdateResultDto;
 import com.salatin.orderservice.model.dto.response.OrderResponseDto;
 import com.salatin.orderservice.service.OrderCancellationService;
 import com.salatin.orderservice.service.OrderManagementService;
@@ -7,6 +9,8 @@ import com.salatin.orderservice.service.mapper.OrderMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.validation.Valid;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -14,6 +18,7 @@ import org.springframework.security.oauth2.server.resource.authentication.JwtAut
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -57,7 +62,8 @@ public class OrderManagementController {
             @ApiResponse(responseCode = "400", description = "Bad request"),
             @ApiResponse(responseCode = "401", description = "Unauthorized"),
             @ApiResponse(responseCode = "403", description = "Access denied"),
-            @ApiResponse(responseCode = "404", description = "Can't find an order with id")
+            @ApiResponse(responseCode = "404", description = "Can't find an order with id"),
+            @ApiResponse(responseCode = "409", description = "Order can't move to this status from the current one")
     })
     @PatchMapping("/{orderId}/set-status")
     @PreAuthorize(value = "hasAnyRole('admin', 'manager')")
@@ -67,6 +73,28 @@ public class OrderManagementController {
                 .map(orderMapper::toDto);
     }
 
+    @Operation(
+            summary = "Update statuses in bulk",
+            description = "Setting a new status for a list of orders at once. Every order is checked against "
+                    + "the allowed transitions and gets its own result: applied, conflict or not found"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Processed, see the result of every order"),
+            @ApiResponse(responseCode = "400", description = "Bad request"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @PatchMapping("/bulk-status")
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager')")
+    public Mono<List<BulkStatusUpdateResultDto>> setStatuses(@RequestBody @Valid
+                                                             BulkStatusUpdateRequestDto requestDto,
+                                                             @AuthenticationPrincipal
+                                                             JwtAuthenticationToken authenticationToken) {
+        return orderManagementService.updateStatuses(requestDto.getOrderIds(), requestDto.getStatus(),
+                authenticationToken)
+                .collectList();
+    }
+
     @Operation(
             summary = "Submit order",
             description = "Submitting an order by manager that was newly created by customer"
@@ -1,24 +1,43 @@
 package com.salatin.orderservice.controller;
 
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderCursor;
+import com.salatin.orderservice.model.OrderSummary;
 import com.salatin.orderservice.model.dto.response.OrderResponseDto;
+import com.salatin.orderservice.model.dto.response.OrderSummaryResponseDto;
 import com.salatin.orderservice.service.OrderRetrievalService;
+import com.salatin.orderservice.service.OrderPageCache;
 import com.salatin.orderservice.service.OrderService;
 import com.salatin.orderservice.service.mapper.OrderMapper;
+import com.salatin.orderservice.util.OrderCursorCodec;
+import com.salatin.orderservice.util.PageRequestCreator;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -27,75 +46,175 @@ import reactor.core.publisher.Mono;
 @RequiredArgsConstructor
 @Tag(name = "Orders", description = "Orders management")
 public class OrderRetrievalController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String ALL_PAGE = "all";
+    private static final String ALL_SUMMARY_PAGE = "all/summary";
+    private static final String BY_STATUS_PAGE = "by-status";
+    private static final String BY_STATUS_SUMMARY_PAGE = "by-status/summary";
+
     private final OrderService orderService;
     private final OrderMapper orderMapper;
     private final OrderRetrievalService orderRetrievalService;
+    private final OrderPageCache orderPageCache;
 
     @Operation(
         summary = "Find the order",
-        description = "Allows to find particular order by id"
+        description = "Allows to find particular order by id. The ETag is the order version, "
+            + "pass it as If-None-Match to get 304 while the order is unchanged"
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Found successfully"),
+        @ApiResponse(responseCode = "304", description = "Not modified"),
         @ApiResponse(responseCode = "401", description = "Unauthorized"),
         @ApiResponse(responseCode = "403", description = "Access denied"),
         @ApiResponse(responseCode = "404", description = "Can't find an order with id")
     })
     @GetMapping("/{orderId}")
     @PreAuthorize(value = "hasAnyRole('manager', 'customer', 'mechanic')")
-    public Mono<OrderResponseDto> findById(@PathVariable String orderId) {
-        return orderRetrievalService.findByIdOrError(orderId)
-            .map(orderMapper::toDto);
+    public Mono<ResponseEntity<OrderResponseDto>> findById(
+            @PathVariable String orderId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) List<String> ifNoneMatch) {
+        // a revalidation reads only the version, the order is read and mapped when it has changed
+        var notModified = ifNoneMatch == null || ifNoneMatch.isEmpty()
+            ? Mono.<ResponseEntity<OrderResponseDto>>empty()
+            : orderRetrievalService.findVersionByIdOrError(orderId)
+                .map(this::toETag)
+                .filter(eTag -> matches(ifNoneMatch, eTag))
+                .map(eTag -> ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).<OrderResponseDto>build());
+
+        return notModified.switchIfEmpty(Mono.defer(() -> orderRetrievalService.findByIdOrError(orderId)
+            .map(order -> ResponseEntity.ok()
+                .eTag(toETag(order.getVersion()))
+                .body(orderMapper.toDto(order)))));
     }
 
     @Operation(
         summary = "Find all orders",
-        description = "Retrieving all orders from DB with pagination"
+        description = "Retrieving all orders from DB with pagination. A full page carries "
+            + "the X-Next-Cursor header, pass it as 'after' to get the next page by cursor"
     )
     @ApiResponses(value = {
-        @ApiResponse(responseCode = "200", description = "Retrieved successfully"),
+        @ApiResponse(responseCode = "200", description = "Retrieved successfully", content = @Content(
+            mediaType = MediaType.APPLICATION_JSON_VALUE,
+            array = @ArraySchema(schema = @Schema(implementation = OrderResponseDto.class)))),
         @ApiResponse(responseCode = "400", description = "Bad request"),
         @ApiResponse(responseCode = "401", description = "Unauthorized"),
-        @ApiResponse(responseCode = "403", description = "Access denied")
+        @ApiResponse(responseCode = "403", description = "Access denied"),
+        @ApiResponse(responseCode = "406", description = "None of the accepted formats is supported")
     })
     @GetMapping
     @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'mechanic')")
-    public Flux<OrderResponseDto> findAll(@RequestParam(defaultValue = "0") Integer page,
+    public Mono<ResponseEntity<byte[]>> findAll(@RequestParam(defaultValue = "0") Integer page,
                                                   @RequestParam(defaultValue = "10") Integer size,
                                                   @RequestParam(defaultValue = "createdAt") String sortByField,
-                                                  @RequestParam(defaultValue = "ASC") String direction) {
-        PageRequest pageRequest = buildPageRequest(page, size, sortByField, direction);
+                                                  @RequestParam(defaultValue = "ASC") String direction,
+                                                  @RequestParam(required = false) String after,
+                                                  ServerHttpRequest request) {
+        var key = new OrderPageCache.PageKey(ALL_PAGE, null, page, size, sortByField, direction, after,
+            orderPageCache.selectMediaType(request.getHeaders().getAccept()));
 
-        return orderService.findAll(pageRequest)
-            .map(orderMapper::toDto);
+        return findCachedPage(key, orderMapper::toDto,
+                pageRequest -> orderService.findAll(pageRequest, Order.class),
+                (cursor, pageRequest) -> orderService.findAllAfter(cursor, pageRequest, Order.class));
+    }
+
+    @Operation(
+        summary = "Find all order summaries",
+        description = "Same as finding all orders, but without parts, works and logs"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Retrieved successfully", content = @Content(
+            mediaType = MediaType.APPLICATION_JSON_VALUE,
+            array = @ArraySchema(schema = @Schema(implementation = OrderSummaryResponseDto.class)))),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied"),
+        @ApiResponse(responseCode = "406", description = "None of the accepted formats is supported")
+    })
+    @GetMapping("/summary")
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'mechanic')")
+    public Mono<ResponseEntity<byte[]>> findAllSummaries(@RequestParam(defaultValue = "0") Integer page,
+                                                  @RequestParam(defaultValue = "10") Integer size,
+                                                  @RequestParam(defaultValue = "createdAt") String sortByField,
+                                                  @RequestParam(defaultValue = "ASC") String direction,
+                                                  @RequestParam(required = false) String after,
+                                                  ServerHttpRequest request) {
+        var key = new OrderPageCache.PageKey(ALL_SUMMARY_PAGE, null, page, size, sortByField, direction, after,
+            orderPageCache.selectMediaType(request.getHeaders().getAccept()));
+
+        return findCachedPage(key, orderMapper::toSummaryDto,
+                pageRequest -> orderService.findAll(pageRequest, OrderSummary.class),
+                (cursor, pageRequest) -> orderService.findAllAfter(cursor, pageRequest, OrderSummary.class));
     }
 
     @Operation(
         summary = "Find all orders by status",
-        description = "Retrieving all orders by their status from DB with pagination"
+        description = "Retrieving all orders by their status from DB with pagination. A full page carries "
+            + "the X-Next-Cursor header, pass it as 'after' to get the next page by cursor"
     )
     @ApiResponses(value = {
-        @ApiResponse(responseCode = "200", description = "Retrieved successfully"),
+        @ApiResponse(responseCode = "200", description = "Retrieved successfully", content = @Content(
+            mediaType = MediaType.APPLICATION_JSON_VALUE,
+            array = @ArraySchema(schema = @Schema(implementation = OrderResponseDto.class)))),
         @ApiResponse(responseCode = "400", description = "Bad request"),
         @ApiResponse(responseCode = "401", description = "Unauthorized"),
-        @ApiResponse(responseCode = "403", description = "Access denied")
+        @ApiResponse(responseCode = "403", description = "Access denied"),
+        @ApiResponse(responseCode = "406", description = "None of the accepted formats is supported")
     })
     @GetMapping("/by-status")
     @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'mechanic')")
-    public Flux<OrderResponseDto> findAllByStatus(@RequestParam(defaultValue = "0") Integer page,
+    public Mono<ResponseEntity<byte[]>> findAllByStatus(@RequestParam(defaultValue = "0") Integer page,
+                                          @RequestParam(defaultValue = "10") Integer size,
+                                          @RequestParam(defaultValue = "createdAt") String sortByField,
+                                          @RequestParam(defaultValue = "ASC") String direction,
+                                          @RequestParam String status,
+                                          @RequestParam(required = false) String after,
+                                          ServerHttpRequest request) {
+        var key = new OrderPageCache.PageKey(BY_STATUS_PAGE, status.toUpperCase(), page, size, sortByField,
+            direction, after, orderPageCache.selectMediaType(request.getHeaders().getAccept()));
+
+        return findCachedPage(key, orderMapper::toDto,
+                pageRequest -> orderService.findAllByStatus(pageRequest, status, Order.class),
+                (cursor, pageRequest) -> orderService.findAllByStatusAfter(cursor, pageRequest, status,
+                    Order.class));
+    }
+
+    @Operation(
+        summary = "Find all order summaries by status",
+        description = "Same as finding all orders by status, but without parts, works and logs"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Retrieved successfully", content = @Content(
+            mediaType = MediaType.APPLICATION_JSON_VALUE,
+            array = @ArraySchema(schema = @Schema(implementation = OrderSummaryResponseDto.class)))),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied"),
+        @ApiResponse(responseCode = "406", description = "None of the accepted formats is supported")
+    })
+    @GetMapping("/by-status/summary")
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'mechanic')")
+    public Mono<ResponseEntity<byte[]>> findAllSummariesByStatus(
+                                          @RequestParam(defaultValue = "0") Integer page,
                                           @RequestParam(defaultValue = "10") Integer size,
                                           @RequestParam(defaultValue = "createdAt") String sortByField,
                                           @RequestParam(defaultValue = "ASC") String direction,
-                                          @RequestParam String status) {
-        PageRequest pageRequest = buildPageRequest(page, size, sortByField, direction);
+                                          @RequestParam String status,
+                                          @RequestParam(required = false) String after,
+                                          ServerHttpRequest request) {
+        var key = new OrderPageCache.PageKey(BY_STATUS_SUMMARY_PAGE, status.toUpperCase(), page, size,
+            sortByField, direction, after, orderPageCache.selectMediaType(request.getHeaders().getAccept()));
 
-        return orderService.findAllByStatus(pageRequest, status)
-            .map(orderMapper::toDto);
+        return findCachedPage(key, orderMapper::toSummaryDto,
+                pageRequest -> orderService.findAllByStatus(pageRequest, status, OrderSummary.class),
+                (cursor, pageRequest) -> orderService.findAllByStatusAfter(cursor, pageRequest, status,
+                    OrderSummary.class));
     }
 
     @Operation(
         summary = "Find all by customer",
-        description = "Retrieving all orders by customer id from DB with pagination"
+        description = "Retrieving all orders by customer id from DB with pagination. A full page carries "
+            + "the X-Next-Cursor header, pass it as 'after' to get the next page by cursor"
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Retrieved successfully"),
@@ -105,25 +224,135 @@ public class OrderRetrievalController {
     })
     @GetMapping("/customer/{userId}")
     @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'customer')")
-    public Flux<OrderResponseDto> findAllByCustomer(@PathVariable String userId,
+    public Mono<List<OrderResponseDto>> findAllByCustomer(@PathVariable String userId,
                                                 @RequestParam(defaultValue = "0") Integer page,
-                                                @RequestParam(defaultValue = "10") Integer size
+                                                @RequestParam(defaultValue = "10") Integer size,
+                                                @RequestParam(required = false) String after,
+                                                ServerHttpResponse response
                                                 ) {
-        var pageRequest = buildPageRequest(page, size, "createdAt", "DESC");
+        return findPage(page, size, "createdAt", "DESC", after, response,
+                pageRequest -> orderService.findAllByUser(userId, pageRequest, Order.class),
+                (cursor, pageRequest) -> orderService.findAllByUserAfter(userId, cursor, pageRequest,
+                    Order.class))
+            .map(foundOrders -> foundOrders.stream().map(orderMapper::toDto).toList());
+    }
+
+    @Operation(
+        summary = "Find all order summaries by customer",
+        description = "Same as finding all orders by customer, but without parts, works and logs"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Retrieved successfully"),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @GetMapping("/customer/{userId}/summary")
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'customer')")
+    public Mono<List<OrderSummaryResponseDto>> findAllSummariesByCustomer(@PathVariable String userId,
+                                                @RequestParam(defaultValue = "0") Integer page,
+                                                @RequestParam(defaultValue = "10") Integer size,
+                                                @RequestParam(required = false) String after,
+                                                ServerHttpResponse response
+                                                ) {
+        return findPage(page, size, "createdAt", "DESC", after, response,
+                pageRequest -> orderService.findAllByUser(userId, pageRequest, OrderSummary.class),
+                (cursor, pageRequest) -> orderService.findAllByUserAfter(userId, cursor, pageRequest,
+                    OrderSummary.class))
+            .map(foundOrders -> foundOrders.stream().map(orderMapper::toSummaryDto).toList());
+    }
+
+    /**
+     * Runs the cursor query when the 'after' token is given and the offset query otherwise.
+     * The page is returned whole, binary formats such as CBOR can't be written as a stream.
+     */
+    private <T> Mono<List<T>> findPage(Integer page,
+                                 Integer size,
+                                 String sortByField,
+                                 String direction,
+                                 String after,
+                                 ServerHttpResponse response,
+                                 Function<PageRequest, Flux<T>> offsetQuery,
+                                 BiFunction<OrderCursor, PageRequest, Flux<T>> cursorQuery) {
+        return Mono.defer(() -> {
+            var pageQuery = createPageQuery(page, size, sortByField, direction, after, offsetQuery, cursorQuery);
 
-        return orderService.findAllByUser(userId, pageRequest)
-            .map(orderMapper::toDto);
+            return pageQuery.orders().collectList()
+                .doOnNext(foundOrders -> findNextCursor(foundOrders, pageQuery.pageRequest())
+                    .ifPresent(nextCursor -> response.getHeaders().set(NEXT_CURSOR_HEADER, nextCursor)));
+        });
     }
 
-    private PageRequest buildPageRequest(Integer page,
-                                         Integer size,
-                                         String sortByField,
-                                         String direction) {
-        try {
-            return PageRequest.of(page, size,
-                    Sort.Direction.valueOf(direction.toUpperCase()), sortByField);
-        } catch (IllegalArgumentException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    /**
+     * Same as {@link #findPage}, but the page is mapped and serialized once and shared through
+     * {@link OrderPageCache} by every request with the same key.
+     */
+    private <T> Mono<ResponseEntity<byte[]>> findCachedPage(OrderPageCache.PageKey key,
+                                                           Function<T, ?> mapper,
+                                                           Function<PageRequest, Flux<T>> offsetQuery,
+                                                           BiFunction<OrderCursor, PageRequest, Flux<T>> cursorQuery) {
+        return orderPageCache.get(key, () -> Mono.defer(() -> {
+                var pageQuery = createPageQuery(key.page(), key.size(), key.sortByField(), key.direction(),
+                    key.after(), offsetQuery, cursorQuery);
+
+                return pageQuery.orders().collectList()
+                    .flatMap(foundOrders -> orderPageCache.serialize(
+                        foundOrders.stream().map(mapper).toList(), key.mediaType(),
+                        findNextCursor(foundOrders, pageQuery.pageRequest()).orElse(null)));
+            }))
+            .map(serializedPage -> {
+                var responseEntity = ResponseEntity.ok().contentType(key.mediaType());
+                if (serializedPage.nextCursor() != null) {
+                    responseEntity.header(NEXT_CURSOR_HEADER, serializedPage.nextCursor());
+                }
+                return responseEntity.body(serializedPage.body());
+            });
+    }
+
+    private <T> PageQuery<T> createPageQuery(Integer page,
+                                             Integer size,
+                                             String sortByField,
+                                             String direction,
+                                             String after,
+                                             Function<PageRequest, Flux<T>> offsetQuery,
+                                             BiFunction<OrderCursor, PageRequest, Flux<T>> cursorQuery) {
+        if (after != null) {
+            var cursor = OrderCursorCodec.decode(after);
+            var pageRequest = PageRequestCreator.create(cursor, size);
+
+            return new PageQuery<>(pageRequest, cursorQuery.apply(cursor, pageRequest));
+        }
+
+        var pageRequest = PageRequestCreator.create(page, size, sortByField, direction);
+
+        return new PageQuery<>(pageRequest, offsetQuery.apply(pageRequest));
+    }
+
+    /**
+     * Pages are small and bounded by size, so the page is collected to put the cursor
+     * of its last order into the response headers before the body is written.
+     */
+    private Optional<String> findNextCursor(List<?> foundOrders, PageRequest pageRequest) {
+        if (foundOrders.size() != pageRequest.getPageSize()) {
+            return Optional.empty();
         }
+
+        return orderService.createCursor(foundOrders.get(foundOrders.size() - 1), pageRequest.getSort())
+            .map(OrderCursorCodec::encode);
+    }
+
+    private String toETag(Long version) {
+        return "\"" + (version == null ? 0L : version) + "\"";
+    }
+
+    private boolean matches(List<String> ifNoneMatch, String eTag) {
+        return ifNoneMatch.stream()
+            .flatMap(header -> Arrays.stream(header.split(",")))
+            .map(String::trim)
+            .anyMatch(candidate -> "*".equals(candidate) || eTag.equals(candidate)
+                || ("W/" + eTag).equals(candidate));
+    }
+
+    private record PageQuery<T>(PageRequest pageRequest, Flux<T> orders) {
     }
 }
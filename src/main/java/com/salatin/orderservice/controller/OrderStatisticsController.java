@@ -0,0 +1,94 @@
+package com.salatin.orderservice.controller;
+
+import com.salatin.orderservice.model.dto.response.OrderStagePercentilesResponseDto;
+import com.salatin.orderservice.model.dto.response.OrderStatisticsResponseDto;
+import com.salatin.orderservice.service.OrderStageHistogramService;
+import com.salatin.orderservice.service.OrderStatisticsService;
+import com.salatin.orderservice.service.mapper.OrderMapper;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.time.LocalDate;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/orders/statistics")
+@RequiredArgsConstructor
+@Tag(name = "Orders", description = "Orders management")
+public class OrderStatisticsController {
+    private final OrderStatisticsService orderStatisticsService;
+    private final OrderStageHistogramService orderStageHistogramService;
+    private final OrderMapper orderMapper;
+
+    @Operation(
+        summary = "Get order statistics",
+        description = "Number of orders per status, per mechanic and per manager, "
+            + "plus orders created, completed and paid today"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Retrieved successfully"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @GetMapping
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager')")
+    public Mono<OrderStatisticsResponseDto> getStatistics() {
+        return Mono.zip(orderStatisticsService.getStatistics(),
+                orderStatisticsService.getDailyStatistics(LocalDate.now()))
+            .map(statistics -> orderMapper.toStatisticsDto(statistics.getT1(), statistics.getT2()));
+    }
+
+    @Operation(
+        summary = "Get stage durations",
+        description = "Percentiles in seconds of the time orders spent in every stage, for the stages finished "
+            + "between the dates inclusive, optionally by one mechanic"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Retrieved successfully"),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @GetMapping("/stages")
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager')")
+    public Mono<List<OrderStagePercentilesResponseDto>> getStagePercentiles(
+                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                        @RequestParam(required = false) String mechanicId) {
+        if (from.isAfter(to)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "The 'from' date can't be after the 'to' date"));
+        }
+
+        return orderStageHistogramService.getPercentiles(from, to, mechanicId)
+            .collectList();
+    }
+
+    @Operation(
+        summary = "Rebuild stage durations",
+        description = "Rebuilds the stage duration histograms from all existing orders, "
+            + "returns the number of orders processed"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Rebuilt successfully"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @PostMapping("/stages/backfill")
+    @PreAuthorize(value = "hasRole('admin')")
+    public Mono<Long> backfillStageHistograms() {
+        return orderStageHistogramService.backfill();
+    }
+}
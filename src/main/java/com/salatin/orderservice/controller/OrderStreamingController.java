@@ -0,0 +1,309 @@
+package com.salatin.orderservice.controller;
+
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderCursor;
+import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.model.dto.response.OrderChangeEventDto;
+import com.salatin.orderservice.model.dto.response.OrderResponseDto;
+import com.salatin.orderservice.service.OrderChangeStreamService;
+import com.salatin.orderservice.service.OrderService;
+import com.salatin.orderservice.service.mapper.OrderMapper;
+import com.salatin.orderservice.util.OrderCursorCodec;
+import com.salatin.orderservice.util.PageRequestCreator;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+/**
+ * Streaming variants of the order listings, chosen by the Accept header. Every order is written
+ * as soon as it leaves the Mongo cursor and the cursor is read only as fast as the client consumes,
+ * so memory doesn't depend on the number of rows. Each server-sent event carries the cursor of
+ * its order and the number of orders still to be sent as the event id, so a reconnecting client
+ * resumes through Last-Event-ID and receives the rest of the requested size.
+ * The /stream endpoint follows live changes instead of listing.
+ */
+@RestController
+@RequestMapping("/orders")
+@RequiredArgsConstructor
+public class OrderStreamingController {
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+    // cursors are URL-safe base64, which has no dots
+    private static final char EVENT_ID_SEPARATOR = '.';
+
+    private final OrderService orderService;
+    private final OrderMapper orderMapper;
+    private final OrderChangeStreamService orderChangeStreamService;
+
+    @Operation(
+        summary = "Follow order changes",
+        description = "Pushing creations, status changes and log appends as server-sent events, "
+            + "optionally filtered by status, mechanic or customer. Resumable with Last-Event-ID"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Subscribed successfully"),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied"),
+        @ApiResponse(responseCode = "410", description = "Last-Event-ID is too old, reload and follow without it")
+    })
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'mechanic')")
+    public Flux<ServerSentEvent<OrderChangeEventDto>> followChanges(
+                                            @RequestParam(required = false) String status,
+                                            @RequestParam(required = false) String mechanicId,
+                                            @RequestParam(required = false) String customerId,
+                                            @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false)
+                                            String lastEventId) {
+        var orderStatus = status == null ? null : parseStatus(status);
+
+        return orderChangeStreamService.listen(lastEventId)
+            .filter(event -> orderStatus == null || orderStatus == event.getStatus())
+            .filter(event -> mechanicId == null || mechanicId.equals(event.getMechanicId()))
+            .filter(event -> customerId == null || customerId.equals(event.getCustomerId()))
+            .map(event -> ServerSentEvent.builder(event)
+                .id(event.getResumeToken())
+                .event(event.getType().name())
+                .build());
+    }
+
+    @Operation(
+        summary = "Stream all orders",
+        description = "Streaming all orders as newline delimited JSON, resumable with the 'after' cursor"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Streamed successfully"),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'mechanic')")
+    public Flux<OrderResponseDto> streamAll(@RequestParam(defaultValue = "0") Integer page,
+                                            @RequestParam(defaultValue = "10000") Integer size,
+                                            @RequestParam(defaultValue = "createdAt") String sortByField,
+                                            @RequestParam(defaultValue = "ASC") String direction,
+                                            @RequestParam(required = false) String after) {
+        return findAll(page, size, sortByField, direction, after)
+            .map(orderMapper::toDto);
+    }
+
+    @Operation(
+        summary = "Stream all orders as events",
+        description = "Streaming all orders as server-sent events, resumable with Last-Event-ID"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Streamed successfully"),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'mechanic')")
+    public Flux<ServerSentEvent<OrderResponseDto>> streamAllEvents(
+                                            @RequestParam(defaultValue = "0") Integer page,
+                                            @RequestParam(defaultValue = "10000") Integer size,
+                                            @RequestParam(defaultValue = "createdAt") String sortByField,
+                                            @RequestParam(defaultValue = "ASC") String direction,
+                                            @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false)
+                                            String lastEventId) {
+        return toEvents(size, PageRequestCreator.create(page, size, sortByField, direction).getSort(), lastEventId,
+            (remaining, after) -> findAll(page, remaining, sortByField, direction, after));
+    }
+
+    @Operation(
+        summary = "Stream all orders by status",
+        description = "Streaming all orders by status as newline delimited JSON, resumable with the 'after' cursor"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Streamed successfully"),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @GetMapping(value = "/by-status", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'mechanic')")
+    public Flux<OrderResponseDto> streamAllByStatus(@RequestParam(defaultValue = "0") Integer page,
+                                                    @RequestParam(defaultValue = "10000") Integer size,
+                                                    @RequestParam(defaultValue = "createdAt") String sortByField,
+                                                    @RequestParam(defaultValue = "ASC") String direction,
+                                                    @RequestParam String status,
+                                                    @RequestParam(required = false) String after) {
+        return findAllByStatus(page, size, sortByField, direction, status, after)
+            .map(orderMapper::toDto);
+    }
+
+    @Operation(
+        summary = "Stream all orders by status as events",
+        description = "Streaming all orders by status as server-sent events, resumable with Last-Event-ID"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Streamed successfully"),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @GetMapping(value = "/by-status", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'mechanic')")
+    public Flux<ServerSentEvent<OrderResponseDto>> streamAllByStatusEvents(
+                                                    @RequestParam(defaultValue = "0") Integer page,
+                                                    @RequestParam(defaultValue = "10000") Integer size,
+                                                    @RequestParam(defaultValue = "createdAt") String sortByField,
+                                                    @RequestParam(defaultValue = "ASC") String direction,
+                                                    @RequestParam String status,
+                                                    @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false)
+                                                    String lastEventId) {
+        return toEvents(size, PageRequestCreator.create(page, size, sortByField, direction).getSort(), lastEventId,
+            (remaining, after) -> findAllByStatus(page, remaining, sortByField, direction, status, after));
+    }
+
+    @Operation(
+        summary = "Stream all orders by customer",
+        description = "Streaming all orders by customer as newline delimited JSON, resumable with the 'after' cursor"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Streamed successfully"),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @GetMapping(value = "/customer/{userId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'customer')")
+    public Flux<OrderResponseDto> streamAllByCustomer(@PathVariable String userId,
+                                                      @RequestParam(defaultValue = "0") Integer page,
+                                                      @RequestParam(defaultValue = "10000") Integer size,
+                                                      @RequestParam(required = false) String after) {
+        return findAllByCustomer(userId, page, size, after)
+            .map(orderMapper::toDto);
+    }
+
+    @Operation(
+        summary = "Stream all orders by customer as events",
+        description = "Streaming all orders by customer as server-sent events, resumable with Last-Event-ID"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Streamed successfully"),
+        @ApiResponse(responseCode = "400", description = "Bad request"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "403", description = "Access denied")
+    })
+    @GetMapping(value = "/customer/{userId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize(value = "hasAnyRole('admin', 'manager', 'customer')")
+    public Flux<ServerSentEvent<OrderResponseDto>> streamAllByCustomerEvents(
+                                                      @PathVariable String userId,
+                                                      @RequestParam(defaultValue = "0") Integer page,
+                                                      @RequestParam(defaultValue = "10000") Integer size,
+                                                      @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false)
+                                                      String lastEventId) {
+        return toEvents(size, PageRequestCreator.create(page, size, "createdAt", "DESC").getSort(), lastEventId,
+            (remaining, after) -> findAllByCustomer(userId, page, remaining, after));
+    }
+
+    private OrderStatus parseStatus(String status) {
+        try {
+            return OrderStatus.valueOf(status.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid order status value");
+        }
+    }
+
+    private Flux<Order> findAll(Integer page, Integer size, String sortByField, String direction,
+                                String after) {
+        return find(PageRequestCreator.create(page, size, sortByField, direction), after,
+            pageRequest -> orderService.findAll(pageRequest, Order.class),
+            (cursor, pageRequest) -> orderService.findAllAfter(cursor, pageRequest, Order.class));
+    }
+
+    private Flux<Order> findAllByStatus(Integer page, Integer size, String sortByField, String direction,
+                                        String status, String after) {
+        return find(PageRequestCreator.create(page, size, sortByField, direction), after,
+            pageRequest -> orderService.findAllByStatus(pageRequest, status, Order.class),
+            (cursor, pageRequest) -> orderService.findAllByStatusAfter(cursor, pageRequest, status, Order.class));
+    }
+
+    private Flux<Order> findAllByCustomer(String userId, Integer page, Integer size, String after) {
+        return find(PageRequestCreator.create(page, size, "createdAt", "DESC"), after,
+            pageRequest -> orderService.findAllByUser(userId, pageRequest, Order.class),
+            (cursor, pageRequest) -> orderService.findAllByUserAfter(userId, cursor, pageRequest, Order.class));
+    }
+
+    private Flux<Order> find(PageRequest pageRequest,
+                             String after,
+                             Function<PageRequest, Flux<Order>> offsetQuery,
+                             BiFunction<OrderCursor, PageRequest, Flux<Order>> cursorQuery) {
+        if (after != null) {
+            var cursor = OrderCursorCodec.decode(after);
+            return cursorQuery.apply(cursor, PageRequestCreator.create(cursor, pageRequest.getPageSize()));
+        }
+
+        return offsetQuery.apply(pageRequest);
+    }
+
+    /**
+     * Queries the requested size, or what is left of it after Last-Event-ID, starting after its cursor.
+     * A resumed stream is sorted by the cursor, so event ids are built with the cursor's sort.
+     */
+    private Flux<ServerSentEvent<OrderResponseDto>> toEvents(Integer size,
+                                                             Sort sort,
+                                                             String lastEventId,
+                                                             BiFunction<Integer, String, Flux<Order>> query) {
+        var position = lastEventId == null
+            ? new EventPosition(null, size, sort)
+            : parseEventId(lastEventId, size);
+        if (position.remaining() == 0) {
+            return Flux.empty();
+        }
+
+        return query.apply(position.remaining(), position.after())
+            .index()
+            .map(indexed -> ServerSentEvent.builder(orderMapper.toDto(indexed.getT2()))
+                .id(orderService.createCursor(indexed.getT2(), position.sort())
+                    .map(cursor -> OrderCursorCodec.encode(cursor) + EVENT_ID_SEPARATOR
+                        + (position.remaining() - indexed.getT1() - 1))
+                    .orElse(null))
+                .build());
+    }
+
+    /**
+     * Ids without the count of remaining orders resume with the requested size.
+     */
+    private EventPosition parseEventId(String eventId, Integer size) {
+        var separatorIndex = eventId.lastIndexOf(EVENT_ID_SEPARATOR);
+        var after = separatorIndex < 0 ? eventId : eventId.substring(0, separatorIndex);
+        var sort = PageRequestCreator.create(OrderCursorCodec.decode(after), 1).getSort();
+        if (separatorIndex < 0) {
+            return new EventPosition(after, size, sort);
+        }
+
+        int remaining;
+        try {
+            remaining = Integer.parseInt(eventId.substring(separatorIndex + 1));
+        } catch (NumberFormatException e) {
+            remaining = -1;
+        }
+        if (remaining < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Last-Event-ID value");
+        }
+
+        return new EventPosition(after, remaining, sort);
+    }
+
+    private record EventPosition(String after, int remaining, Sort sort) {
+    }
+}
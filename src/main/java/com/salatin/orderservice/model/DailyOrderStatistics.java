@@ -0,0 +1,22 @@
+package com.salatin.orderservice.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Orders created, completed and paid during one day, the id is the date.
+ */
+@Document(collection = "order_daily_statistics")
+@Getter
+@Setter
+@ToString
+public class DailyOrderStatistics {
+    @Id
+    private String id;
+    private long created;
+    private long completed;
+    private long paid;
+}
@@ -9,6 +9,9 @@ import lombok.Setter;
 import lombok.ToString;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.math.BigDecimal;
@@ -16,12 +19,30 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Document(collection = "orders")
+@CompoundIndexes({
+    @CompoundIndex(name = "createdAt_id", def = "{'createdAt': 1, '_id': 1}"),
+    @CompoundIndex(name = "status_createdAt_id", def = "{'status': 1, 'createdAt': 1, '_id': 1}"),
+    @CompoundIndex(name = "customerId_createdAt_id", def = "{'customerId': 1, 'createdAt': 1, '_id': 1}"),
+    @CompoundIndex(name = "carId_status", def = "{'carId': 1, 'status': 1}"),
+    @CompoundIndex(name = "carId_open_unique", def = "{'carId': 1}", unique = true,
+        partialFilter = OrderStatus.OPEN_STATUS_FILTER),
+    @CompoundIndex(name = "mechanicId_status_createdAt", def = "{'mechanicId': 1, 'status': 1, 'createdAt': 1}"),
+    @CompoundIndex(name = "managerId_status_createdAt", def = "{'managerId': 1, 'status': 1, 'createdAt': 1}"),
+    @CompoundIndex(name = "outbox_pending", def = "{'outbox.occurredAt': 1}",
+        partialFilter = "{'outbox.occurredAt': {'$exists': true}}")
+})
 @Getter
 @Setter
 @ToString
 public class Order {
     @Id
     private String id;
+    /**
+     * Incremented by every write, including log appends. Orders written before it was
+     * introduced don't have it until their next write.
+     */
+    @Version
+    private Long version;
     @CreatedDate
     private LocalDateTime createdAt;
     private LocalDateTime submittedAt;
@@ -43,4 +64,14 @@ public class Order {
     private String customerId;
     private String mechanicId;
     private String managerId;
+    /**
+     * Token of the bulk status update that changed the status last, tells the orders changed
+     * by one request from those another request moved to the same status meanwhile.
+     */
+    private String transitionId;
+    /**
+     * Events written together with the change they describe and not yet published,
+     * see {@link com.salatin.orderservice.service.OrderEventRelay}.
+     */
+    private List<OrderEvent> outbox = new ArrayList<>();
 }
@@ -0,0 +1,20 @@
+package com.salatin.orderservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Position of the last order of a page: the value of the primary sort field
+ * (already converted to its Mongo representation) plus the order id as a tie-breaker.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class OrderCursor {
+    private String sortField;
+    private Sort.Direction direction;
+    private Object value;
+    private String id;
+}
@@ -0,0 +1,41 @@
+package com.salatin.orderservice.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Transient;
+
+/**
+ * Lifecycle event kept in the outbox of the order it belongs to until it is published to Kafka.
+ * The order id isn't stored, it is filled in from the order when the event is published.
+ * Events may be published more than once, consumers tell them apart by the event id.
+ */
+@Getter
+@Setter
+@ToString
+public class OrderEvent {
+    private String eventId;
+    @Transient
+    private String orderId;
+    private Type type;
+    private OrderStatus status;
+    private String actorId;
+    private LocalDateTime occurredAt;
+
+    public static OrderEvent of(Type type, OrderStatus status, String actorId) {
+        var event = new OrderEvent();
+        event.setEventId(UUID.randomUUID().toString());
+        event.setType(type);
+        event.setStatus(status);
+        event.setActorId(actorId);
+        event.setOccurredAt(LocalDateTime.now());
+        return event;
+    }
+
+    public enum Type {
+        CREATED,
+        STATUS_CHANGED
+    }
+}
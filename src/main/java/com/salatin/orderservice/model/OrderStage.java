@@ -0,0 +1,26 @@
+package com.salatin.orderservice.model;
+
+import java.time.LocalDateTime;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Stages of an order measured between two of its timestamps.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum OrderStage {
+    CAR_DELIVERY(Order::getSubmittedAt, Order::getCarReceivedAt),
+    QUEUE(Order::getCarReceivedAt, Order::getStartedWorksAt),
+    REPAIR(Order::getStartedWorksAt, Order::getFinishedWorksAt),
+    PAYMENT(Order::getFinishedWorksAt, Order::getOrderPaidAt),
+    TOTAL(Order::getSubmittedAt, Order::getOrderPaidAt);
+
+    public static final String[] TIMESTAMP_FIELDS = {
+        "submittedAt", "carReceivedAt", "startedWorksAt", "finishedWorksAt", "orderPaidAt"
+    };
+
+    private final Function<Order, LocalDateTime> start;
+    private final Function<Order, LocalDateTime> end;
+}
@@ -0,0 +1,30 @@
+package com.salatin.orderservice.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Durations of one stage of the orders that finished it on one day, either by one mechanic
+ * or by everyone when mechanicId is null. Buckets are counts keyed by the lowest duration in
+ * seconds of the HdrHistogram bucket, so histograms are merged by adding the counts.
+ */
+@Document(collection = "order_stage_histograms")
+@CompoundIndex(name = "mechanicId_date", def = "{'mechanicId': 1, 'date': 1}")
+@Getter
+@Setter
+@ToString
+public class OrderStageHistogram {
+    @Id
+    private String id;
+    private OrderStage stage;
+    private String date;
+    private String mechanicId;
+    private long count;
+    private Map<Long, Long> buckets = new HashMap<>();
+}
@@ -0,0 +1,27 @@
+package com.salatin.orderservice.model;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Materialized order counters, incremented with every creation and transition.
+ */
+@Document(collection = "order_statistics")
+@Getter
+@Setter
+@ToString
+public class OrderStatistics {
+    @Id
+    private String id;
+    private Map<OrderStatus, Long> statuses = new EnumMap<>(OrderStatus.class);
+    private Map<String, Map<OrderStatus, Long>> mechanics = new HashMap<>();
+    private Map<String, Map<OrderStatus, Long>> managers = new HashMap<>();
+    private LocalDateTime reconciledAt;
+}
@@ -1,5 +1,10 @@
 package com.salatin.orderservice.model;
 
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 public enum OrderStatus {
     CREATED,
     SUBMITTED,
@@ -8,5 +13,31 @@ public enum OrderStatus {
     IN_PROGRESS,
     SUSPENDED,
     COMPLETED,
-    PAYED
+    PAYED;
+
+    /**
+     * Statuses in which the car is still held by the order, i.e. everything except PAYED and CANCELED,
+     * as a Mongo filter on the status field. Kept as a constant so index annotations can use it,
+     * {@link #openStatuses()} is derived from it.
+     */
+    public static final String OPEN_STATUS_FILTER = "{'status': {'$in': ['CREATED', 'SUBMITTED', "
+            + "'CAR_RECEIVED', 'IN_PROGRESS', 'SUSPENDED', 'COMPLETED']}}";
+
+    private static final Set<OrderStatus> OPEN_STATUSES = parseOpenStatuses();
+
+    /**
+     * Statuses in which the car is still held by the order, see {@link #OPEN_STATUS_FILTER}.
+     */
+    public static Set<OrderStatus> openStatuses() {
+        return EnumSet.copyOf(OPEN_STATUSES);
+    }
+
+    private static Set<OrderStatus> parseOpenStatuses() {
+        var names = OPEN_STATUS_FILTER.substring(OPEN_STATUS_FILTER.indexOf('[') + 1, OPEN_STATUS_FILTER.indexOf(']'));
+
+        return Arrays.stream(names.split(","))
+                .map(name -> name.strip().replace("'", ""))
+                .map(OrderStatus::valueOf)
+                .collect(Collectors.toCollection(() -> EnumSet.noneOf(OrderStatus.class)));
+    }
 }
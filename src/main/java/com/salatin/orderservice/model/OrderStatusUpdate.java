@@ -0,0 +1,16 @@
+package com.salatin.orderservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.mongodb.core.query.Update;
+
+/**
+ * Update of one order that is applied only while the order is still in the expected status.
+ */
+@Getter
+@AllArgsConstructor
+public class OrderStatusUpdate {
+    private String orderId;
+    private OrderStatus expectedStatus;
+    private Update update;
+}
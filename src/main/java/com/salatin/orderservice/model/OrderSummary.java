@@ -0,0 +1,28 @@
+package com.salatin.orderservice.model;
+
+import java.time.LocalDateTime;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Read-only projection of {@link Order} without parts, works and logs.
+ * Queries returning it only fetch these fields from Mongo.
+ */
+@Getter
+@Setter
+@ToString
+public class OrderSummary {
+    private String id;
+    private LocalDateTime createdAt;
+    private LocalDateTime submittedAt;
+    private LocalDateTime carReceivedAt;
+    private LocalDateTime startedWorksAt;
+    private LocalDateTime finishedWorksAt;
+    private LocalDateTime orderPaidAt;
+    private OrderStatus status;
+    private String carId;
+    private String customerId;
+    private String mechanicId;
+    private String managerId;
+}
@@ -0,0 +1,30 @@
+package com.salatin.orderservice.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Realm roles the service checks, the authority names match the {@code roles} claim prefixed with ROLE_.
+ */
+public enum Role {
+    ADMIN,
+    MANAGER,
+    MECHANIC,
+    CUSTOMER;
+
+    private static final Map<String, Role> ROLES_BY_AUTHORITY = Arrays.stream(values())
+            .collect(Collectors.toMap(Role::getAuthority, Function.identity()));
+
+    private final String authority = "ROLE_" + name().toLowerCase();
+
+    public String getAuthority() {
+        return authority;
+    }
+
+    public static Optional<Role> fromAuthority(String authority) {
+        return Optional.ofNullable(ROLES_BY_AUTHORITY.get(authority));
+    }
+}
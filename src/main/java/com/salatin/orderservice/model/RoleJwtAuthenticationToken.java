@@ -0,0 +1,28 @@
+package com.salatin.orderservice.model;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+/**
+ * JWT authentication with the known roles resolved once when the token is verified,
+ * so role checks don't scan the authorities.
+ */
+public class RoleJwtAuthenticationToken extends JwtAuthenticationToken {
+    private final Set<Role> roles;
+
+    public RoleJwtAuthenticationToken(Jwt jwt, Collection<? extends GrantedAuthority> authorities) {
+        super(jwt, authorities);
+        var resolvedRoles = EnumSet.noneOf(Role.class);
+        authorities.forEach(authority -> Role.fromAuthority(authority.getAuthority())
+                .ifPresent(resolvedRoles::add));
+        this.roles = resolvedRoles;
+    }
+
+    public boolean hasRole(Role role) {
+        return roles.contains(role);
+    }
+}
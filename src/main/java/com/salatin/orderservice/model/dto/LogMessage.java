@@ -1,10 +1,16 @@
 package com.salatin.orderservice.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.time.LocalDateTime;
 import lombok.Data;
 
 @Data
 public class LogMessage {
+    /**
+     * Position of the message in Kafka, lets a retried batch skip orders it has already written to.
+     */
+    @JsonIgnore
+    private String logId;
     private String from;
     private String text;
     private LocalDateTime time = LocalDateTime.now();
@@ -0,0 +1,18 @@
+package com.salatin.orderservice.model.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class BulkStatusUpdateRequestDto {
+    @NotEmpty(message = "Order ids can't be empty")
+    @Size(max = 1000, message = "Max 1000 orders can be updated at once")
+    private List<String> orderIds;
+    @NotBlank(message = "Status field can't be empty")
+    private String status;
+}
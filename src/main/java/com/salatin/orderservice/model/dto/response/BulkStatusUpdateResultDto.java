@@ -0,0 +1,19 @@
+package com.salatin.orderservice.model.dto.response;
+
+import com.salatin.orderservice.model.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BulkStatusUpdateResultDto {
+    private String orderId;
+    private Result result;
+    private OrderStatus status;
+
+    public enum Result {
+        APPLIED,
+        CONFLICT,
+        NOT_FOUND
+    }
+}
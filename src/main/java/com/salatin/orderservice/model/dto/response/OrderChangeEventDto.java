@@ -0,0 +1,31 @@
+package com.salatin.orderservice.model.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.model.dto.LogMessage;
+import java.time.Instant;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class OrderChangeEventDto {
+    @JsonIgnore
+    private String resumeToken;
+    private Type type;
+    private String orderId;
+    private Instant changedAt;
+    private OrderStatus status;
+    private String carId;
+    private String customerId;
+    private String mechanicId;
+    private String managerId;
+    private List<LogMessage> newLogs;
+
+    public enum Type {
+        CREATED,
+        STATUS_CHANGED,
+        LOG_APPENDED
+    }
+}
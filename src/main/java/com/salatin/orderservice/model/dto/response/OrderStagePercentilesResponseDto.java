@@ -0,0 +1,16 @@
+package com.salatin.orderservice.model.dto.response;
+
+import com.salatin.orderservice.model.OrderStage;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class OrderStagePercentilesResponseDto {
+    private OrderStage stage;
+    private long count;
+    private long p50Seconds;
+    private long p90Seconds;
+    private long p99Seconds;
+    private long maxSeconds;
+}
@@ -0,0 +1,19 @@
+package com.salatin.orderservice.model.dto.response;
+
+import com.salatin.orderservice.model.OrderStatus;
+import java.time.LocalDateTime;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class OrderStatisticsResponseDto {
+    private Map<OrderStatus, Long> statuses;
+    private Map<String, Map<OrderStatus, Long>> mechanics;
+    private Map<String, Map<OrderStatus, Long>> managers;
+    private long createdToday;
+    private long completedToday;
+    private long paidToday;
+    private LocalDateTime reconciledAt;
+}
@@ -0,0 +1,23 @@
+package com.salatin.orderservice.model.dto.response;
+
+import com.salatin.orderservice.model.OrderStatus;
+import java.time.LocalDateTime;
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class OrderSummaryResponseDto {
+    private String id;
+    private LocalDateTime createdAt;
+    private LocalDateTime submittedAt;
+    private LocalDateTime carReceivedAt;
+    private LocalDateTime startedWorksAt;
+    private LocalDateTime finishedWorksAt;
+    private LocalDateTime orderPaidAt;
+    private OrderStatus status;
+    private String carId;
+    private String customerId;
+    private String mechanicId;
+    private String managerId;
+}
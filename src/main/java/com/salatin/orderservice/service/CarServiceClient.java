@@ -0,0 +1,199 @@
+package com.salatin.orderservice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.salatin.orderservice.model.dto.Car;
+import com.salatin.orderservice.util.RoleChecker;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+/**
+ * Looks cars up in car-service through a short-lived in-process cache. Concurrent lookups
+ * of the same entry share one in-flight call. Entries are scoped to the caller:
+ * managers share them, a customer only sees what was loaded with their own token.
+ * Every call has a deadline and runs behind a circuit breaker. When a call takes longer
+ * than the recent p95, a hedged request is sent. The load balancer routes it to the next
+ * car-service instance.
+ */
+@Component
+@RequiredArgsConstructor
+@Log4j2
+public class CarServiceClient {
+    private static final String MANAGER_SCOPE = "manager";
+    private static final String CIRCUIT_BREAKER_NAME = "car-service";
+    private static final String REQUESTS_METRIC = "car-service.requests";
+
+    private final WebClient.Builder webClientBuilder;
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    @Value("${car-service.cache.max-size:10000}")
+    private long cacheMaxSize;
+    @Value("${car-service.cache.ttl:60s}")
+    private Duration cacheTtl;
+    @Value("${car-service.timeout:2s}")
+    private Duration callTimeout;
+    @Value("${car-service.hedging.enabled:true}")
+    private boolean hedgingEnabled;
+    @Value("${car-service.hedging.min-delay:100ms}")
+    private Duration minHedgeDelay;
+    private WebClient webClient;
+    private AsyncCache<String, Car> carCache;
+    private Counter coalescedCounter;
+    private Counter hedgedCounter;
+    private Timer successfulCallsTimer;
+    private CircuitBreaker circuitBreaker;
+
+    @PostConstruct
+    public void init() {
+        webClient = webClientBuilder.build();
+        carCache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .buildAsync(), "car-service.cars");
+        coalescedCounter = Counter.builder("car-service.cars.coalesced")
+                .description("Car lookups served by an already running car-service call")
+                .register(meterRegistry);
+        hedgedCounter = Counter.builder("car-service.requests.hedged")
+                .description("Second requests sent because the first one was slower than p95")
+                .register(meterRegistry);
+        successfulCallsTimer = Timer.builder(REQUESTS_METRIC)
+                .tag("outcome", "SUCCESS")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        circuitBreaker = circuitBreakerRegistry.circuitBreaker(CIRCUIT_BREAKER_NAME);
+    }
+
+    public Mono<Car> getCar(String carId, JwtAuthenticationToken authentication) {
+        var bearerToken = "Bearer " + authentication.getToken().getTokenValue();
+        var cacheKey = carId + ":" + (RoleChecker.hasRoleManager(authentication)
+                ? MANAGER_SCOPE : authentication.getName());
+
+        return Mono.defer(() -> {
+            var inFlight = carCache.asMap().get(cacheKey);
+            if (inFlight != null && !inFlight.isDone()) {
+                coalescedCounter.increment();
+            }
+
+            // cancellation of one subscriber must not cancel the call shared with the others
+            return Mono.fromFuture(carCache.get(cacheKey,
+                    (key, executor) -> fetchCar(carId, bearerToken).toFuture()), true);
+        });
+    }
+
+    private Mono<Car> fetchCar(String carId, String bearerToken) {
+        return hedge(() -> callCarService(carId, bearerToken))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .onErrorMap(TimeoutException.class, e -> createServiceUnavailableException())
+                .onErrorMap(CallNotPermittedException.class, e -> createServiceUnavailableException())
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Can't find a car with id: " + carId)))
+                .doOnNext(car -> log.debug("Retrieved the car: {}", car));
+    }
+
+    /**
+     * Whichever request returns a car first wins, the other one is cancelled, so a failing request
+     * waits for the other one. A first request that ends before the hedge delay is returned as is
+     * and no second request is sent. When both fail, the error of the first request is returned.
+     */
+    private Mono<Car> hedge(Supplier<Mono<Car>> call) {
+        if (!hedgingEnabled) {
+            return call.get();
+        }
+
+        var firstCall = call.get().share();
+        var hedgedCall = Mono.delay(calculateHedgeDelay())
+                .takeUntilOther(firstCall)
+                .flatMap(tick -> {
+                    hedgedCounter.increment();
+                    return call.get();
+                });
+
+        return Mono.firstWithValue(firstCall, hedgedCall)
+                .onErrorResume(NoSuchElementException.class, this::unwrapFirstError);
+    }
+
+    /**
+     * Both requests failed or found nothing, the errors are listed in the order of the requests.
+     */
+    private Mono<Car> unwrapFirstError(NoSuchElementException e) {
+        return Exceptions.unwrapMultiple(e.getCause()).stream()
+                .filter(error -> !(error instanceof NoSuchElementException))
+                .findFirst()
+                .map(Mono::<Car>error)
+                .orElseGet(Mono::empty);
+    }
+
+    private Duration calculateHedgeDelay() {
+        var p95 = Arrays.stream(successfulCallsTimer.takeSnapshot().percentileValues())
+                .filter(percentile -> percentile.percentile() == 0.95)
+                .map(percentile -> Duration.ofNanos((long) percentile.value(TimeUnit.NANOSECONDS)))
+                .findFirst()
+                .orElse(Duration.ZERO);
+
+        return p95.compareTo(minHedgeDelay) > 0 ? p95 : minHedgeDelay;
+    }
+
+    private Mono<Car> callCarService(String carId, String bearerToken) {
+        return Mono.defer(() -> {
+            var sample = Timer.start(meterRegistry);
+
+            return webClient
+                    .get()
+                    .uri("http://car-service/cars/{carId}", carId)
+                    .header(HttpHeaders.AUTHORIZATION, bearerToken)
+                    .retrieve()
+                    .onStatus(HttpStatusCode::is5xxServerError,
+                            response -> Mono.error(createServiceUnavailableException()))
+                    .bodyToMono(Car.class)
+                    .timeout(callTimeout)
+                    .doOnSuccess(car -> sample.stop(successfulCallsTimer))
+                    .doOnError(throwable -> sample.stop(meterRegistry.timer(REQUESTS_METRIC,
+                            "outcome", resolveOutcome(throwable))));
+        });
+    }
+
+    private String resolveOutcome(Throwable throwable) {
+        if (throwable instanceof TimeoutException) {
+            return "TIMEOUT";
+        }
+        if (throwable instanceof WebClientResponseException responseException) {
+            return String.valueOf(responseException.getStatusCode().value());
+        }
+        if (throwable instanceof ResponseStatusException statusException) {
+            return String.valueOf(statusException.getStatusCode().value());
+        }
+        return "ERROR";
+    }
+
+    private ResponseStatusException createServiceUnavailableException() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Car service temporarily unavailable");
+    }
+}
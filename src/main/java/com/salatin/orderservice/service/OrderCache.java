@@ -0,0 +1,157 @@
+package com.salatin.orderservice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.dto.LogMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Optional read-through cache of whole orders by id, bounded by an estimated size in bytes
+ * and by a TTL. Concurrent misses of one order share one read. Entries are dropped after every
+ * local write and on every change of the orders collection seen in the change stream shared with
+ * {@link OrderChangeStreamService}, so writes of other replicas are picked up with the lag of the
+ * stream. The cache is cleared whenever the stream (re)connects, since changes may have been missed.
+ * Cached orders are shared, callers must not modify them.
+ */
+@Component
+@RequiredArgsConstructor
+@Log4j2
+public class OrderCache {
+    private static final String INVALIDATIONS_METRIC = "orders.cache.invalidations";
+    private static final int BASE_WEIGHT = 512;
+    private static final int ITEM_WEIGHT = 128;
+
+    private final OrderChangeStreamService orderChangeStreamService;
+    private final MeterRegistry meterRegistry;
+    @Value("${orders.cache.enabled:false}")
+    private boolean enabled;
+    @Value("${orders.cache.max-weight:67108864}")
+    private long maxWeight;
+    @Value("${orders.cache.ttl:5m}")
+    private Duration ttl;
+    private AsyncCache<String, Order> orders;
+    private Counter localInvalidations;
+    private Counter streamInvalidations;
+    private Timer invalidationLag;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        orders = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String id, Order order) -> estimateWeight(order))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync(), "orders.cache");
+        Gauge.builder("orders.cache.weight", orders, cache -> cache.synchronous().policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L))
+                        .orElse(0L))
+                .description("Estimated size of the cached orders")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        localInvalidations = meterRegistry.counter(INVALIDATIONS_METRIC, "source", "local");
+        streamInvalidations = meterRegistry.counter(INVALIDATIONS_METRIC, "source", "change-stream");
+        invalidationLag = Timer.builder("orders.cache.invalidation.lag")
+                .description("Time from a change in Mongo to the invalidation of the cached order, "
+                        + "the longest a replica serves a stale order")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+
+        orderChangeStreamService.watchKeys()
+                .subscribe(this::invalidate,
+                        throwable -> log.error("Order cache stopped following changes", throwable));
+    }
+
+    public Mono<Order> get(String id, Function<String, Mono<Order>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+
+        // cancellation of one subscriber must not cancel the read shared with the others
+        return Mono.defer(() -> Mono.fromFuture(orders.get(id,
+                (key, executor) -> loader.apply(key).toFuture()), true));
+    }
+
+    /**
+     * Returns the order only if it is cached and already loaded.
+     */
+    public Mono<Order> getIfPresent(String id) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+
+        return Mono.defer(() -> {
+            var cached = orders.getIfPresent(id);
+            return cached == null || !cached.isDone() || cached.isCompletedExceptionally()
+                    ? Mono.empty()
+                    : Mono.justOrEmpty(cached.getNow(null));
+        });
+    }
+
+    public void invalidate(String id) {
+        invalidateAll(List.of(id));
+    }
+
+    public void invalidateAll(Collection<String> ids) {
+        if (enabled) {
+            orders.synchronous().invalidateAll(ids);
+            localInvalidations.increment(ids.size());
+        }
+    }
+
+    private void invalidate(OrderChangeStreamService.OrderKeyChange change) {
+        if (change.orderId() == null) {
+            orders.synchronous().invalidateAll();
+            return;
+        }
+
+        orders.synchronous().invalidate(change.orderId());
+        streamInvalidations.increment();
+
+        if (change.changedAt() != null) {
+            invalidationLag.record(Duration.between(change.changedAt(), Instant.now()));
+        }
+    }
+
+    /**
+     * A rough estimate of the heap taken by an order, dominated by its logs, parts and works.
+     */
+    private int estimateWeight(Order order) {
+        long weight = BASE_WEIGHT
+                + (long) ITEM_WEIGHT * (size(order.getParts()) + size(order.getWorks()))
+                + 2L * (length(order.getComplaints()) + length(order.getFeedback()));
+        if (order.getLogs() != null) {
+            for (LogMessage logMessage : order.getLogs()) {
+                weight += ITEM_WEIGHT + 2L * (length(logMessage.getFrom()) + length(logMessage.getText()));
+            }
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private int size(Collection<?> values) {
+        return values == null ? 0 : values.size();
+    }
+
+    private int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
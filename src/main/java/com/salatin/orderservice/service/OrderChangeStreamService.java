@@ -0,0 +1,253 @@
+package com.salatin.orderservice.service;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.model.dto.LogMessage;
+import com.salatin.orderservice.model.dto.response.OrderChangeEventDto;
+import com.salatin.orderservice.util.OrderResponseCreator;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Publishes status changes and log appends of orders from one change stream on the orders
+ * collection, shared by every subscriber and opened only while somebody listens. The same stream
+ * tells {@link OrderCache} which orders to drop.
+ * The latest events are kept for replay and numbered. A new subscriber skips the replayed ones,
+ * while a client reconnecting with the resume token of its last event gets everything after it.
+ * Tokens older than the replay window, or issued by another replica, are answered with 410 Gone:
+ * the client reloads the orders and follows again without a token, so every client stays on
+ * the one shared stream.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class OrderChangeStreamService {
+    private static final String RESUME_TOKEN_DATA = "_data";
+    private static final String LOGS_FIELD = "logs";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final Map<String, Long> recentSequences = new LinkedHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReference<BsonDocument> lastResumeToken = new AtomicReference<>();
+    @Value("${orders.changes.replay-size:1000}")
+    private int replaySize;
+    private Flux<Change> sharedChanges;
+    private Flux<SequencedEvent> sharedEvents;
+
+    @PostConstruct
+    public void init() {
+        // a retry resumes after the last seen change, a new connection starts from now
+        sharedChanges = Flux.defer(() -> {
+                    lastResumeToken.set(null);
+                    return Flux.defer(() -> watch(lastResumeToken.get()))
+                            .doOnNext(change -> {
+                                if (change.event() != null) {
+                                    lastResumeToken.set((BsonDocument) change.event().getResumeToken());
+                                }
+                            })
+                            .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                                    .maxBackoff(Duration.ofSeconds(30))
+                                    .doBeforeRetry(signal -> log.warn("Order change stream failed, reconnecting: {}",
+                                            signal.failure().getMessage())));
+                })
+                .publish()
+                .refCount();
+        sharedEvents = Flux.defer(() -> {
+                    clearRecentSequences();
+                    return sharedChanges;
+                })
+                .mapNotNull(change -> change.event() == null ? null : toEvent(change.event()))
+                .map(event -> new SequencedEvent(sequence.incrementAndGet(), event))
+                .doOnNext(this::remember)
+                .replay(replaySize)
+                .refCount();
+    }
+
+    public Flux<OrderChangeEventDto> listen(String resumeToken) {
+        return Flux.defer(() -> {
+            var lastSeen = resumeToken == null ? Long.valueOf(sequence.get()) : findSequence(resumeToken);
+            if (lastSeen == null) {
+                return Flux.error(OrderResponseCreator.createResumeTokenExpiredException());
+            }
+
+            return sharedEvents
+                    .filter(sequencedEvent -> sequencedEvent.sequence() > lastSeen)
+                    .map(SequencedEvent::event);
+        });
+    }
+
+    /**
+     * Every order inserted, changed or deleted, as seen by the shared stream. The stream stays open
+     * while this is subscribed. A change without an order id is sent whenever the stream (re)connects,
+     * since changes may have been missed meanwhile.
+     */
+    public Flux<OrderKeyChange> watchKeys() {
+        return sharedChanges.map(change -> change.event() == null
+                ? new OrderKeyChange(null, null)
+                : new OrderKeyChange(readOrderId(change.event().getRaw()), readChangedAt(change.event())));
+    }
+
+    private Flux<Change> watch(BsonDocument resumeToken) {
+        var options = ChangeStreamOptions.builder()
+                .filter(new Document("$match", new Document("operationType",
+                                new Document("$in", List.of("insert", "update", "replace", "delete")))),
+                        // the full document is only needed for filtering, heavy arrays are dropped
+                        new Document("$project", new Document("operationType", 1)
+                                .append("clusterTime", 1)
+                                .append("wallTime", 1)
+                                .append("documentKey", 1)
+                                .append("updateDescription", 1)
+                                .append("fullDocument.status", 1)
+                                .append("fullDocument.carId", 1)
+                                .append("fullDocument.customerId", 1)
+                                .append("fullDocument.mechanicId", 1)
+                                .append("fullDocument.managerId", 1)))
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        if (resumeToken != null) {
+            options.resumeAfter(resumeToken);
+        }
+
+        return Flux.concat(Mono.just(new Change(null)),
+                mongoTemplate.changeStream(null, mongoTemplate.getCollectionName(Order.class),
+                                options.build(), Document.class)
+                        .map(Change::new));
+    }
+
+    /**
+     * The wall time has millisecond resolution, the cluster time only seconds. Servers before 6.0
+     * don't send the wall time.
+     */
+    private Instant readChangedAt(ChangeStreamEvent<Document> changeStreamEvent) {
+        var wallTime = changeStreamEvent.getRaw().getWallTime();
+
+        return wallTime == null ? changeStreamEvent.getTimestamp() : Instant.ofEpochMilli(wallTime.getValue());
+    }
+
+    private String readOrderId(ChangeStreamDocument<Document> raw) {
+        var id = raw.getDocumentKey().get("_id");
+
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    private OrderChangeEventDto toEvent(ChangeStreamEvent<Document> changeStreamEvent) {
+        var raw = changeStreamEvent.getRaw();
+        var fullDocument = raw.getFullDocument();
+        if (fullDocument == null) {
+            return null;
+        }
+
+        var type = resolveType(raw);
+        if (type == null) {
+            return null;
+        }
+
+        var event = new OrderChangeEventDto();
+        event.setResumeToken(((BsonDocument) changeStreamEvent.getResumeToken())
+                .getString(RESUME_TOKEN_DATA).getValue());
+        event.setType(type);
+        event.setOrderId(readOrderId(raw));
+        event.setChangedAt(changeStreamEvent.getTimestamp());
+        var status = fullDocument.getString("status");
+        event.setStatus(status == null ? null : OrderStatus.valueOf(status));
+        event.setCarId(fullDocument.getString("carId"));
+        event.setCustomerId(fullDocument.getString("customerId"));
+        event.setMechanicId(fullDocument.getString("mechanicId"));
+        event.setManagerId(fullDocument.getString("managerId"));
+        if (type == OrderChangeEventDto.Type.LOG_APPENDED) {
+            event.setNewLogs(readNewLogs(raw));
+        }
+        return event;
+    }
+
+    private OrderChangeEventDto.Type resolveType(ChangeStreamDocument<Document> raw) {
+        return switch (raw.getOperationType()) {
+            case INSERT -> OrderChangeEventDto.Type.CREATED;
+            case REPLACE -> OrderChangeEventDto.Type.STATUS_CHANGED;
+            case UPDATE -> {
+                var updatedFields = raw.getUpdateDescription().getUpdatedFields();
+                if (updatedFields == null) {
+                    yield null;
+                }
+                if (updatedFields.containsKey("status")) {
+                    yield OrderChangeEventDto.Type.STATUS_CHANGED;
+                }
+                yield updatedFields.keySet().stream().anyMatch(field -> field.startsWith(LOGS_FIELD))
+                        ? OrderChangeEventDto.Type.LOG_APPENDED
+                        : null;
+            }
+            default -> null;
+        };
+    }
+
+    /**
+     * A plain $push reports every new element as logs.N, a $push with $slice reports the whole
+     * array, of which only the last element is new for sure.
+     */
+    private List<LogMessage> readNewLogs(ChangeStreamDocument<Document> raw) {
+        var converter = mongoTemplate.getConverter();
+
+        return raw.getUpdateDescription().getUpdatedFields().entrySet().stream()
+                .filter(field -> field.getKey().startsWith(LOGS_FIELD))
+                .map(Map.Entry::getValue)
+                .map(value -> value.isArray()
+                        ? value.asArray().get(value.asArray().size() - 1)
+                        : value)
+                .filter(BsonValue::isDocument)
+                .map(value -> converter.read(LogMessage.class,
+                        Document.parse(value.asDocument().toJson())))
+                .toList();
+    }
+
+    private synchronized void remember(SequencedEvent sequencedEvent) {
+        recentSequences.put(sequencedEvent.event().getResumeToken(), sequencedEvent.sequence());
+        var iterator = recentSequences.entrySet().iterator();
+        while (recentSequences.size() > replaySize) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private synchronized Long findSequence(String resumeToken) {
+        return recentSequences.get(resumeToken);
+    }
+
+    private synchronized void clearRecentSequences() {
+        recentSequences.clear();
+    }
+
+    /**
+     * Identifies a changed order, the order id is null when the stream has (re)connected.
+     */
+    public record OrderKeyChange(String orderId, Instant changedAt) {
+    }
+
+    /**
+     * A change of the orders collection, or the (re)connection of the stream when the event is null.
+     */
+    private record Change(ChangeStreamEvent<Document> event) {
+    }
+
+    private record SequencedEvent(long sequence, OrderChangeEventDto event) {
+    }
+}
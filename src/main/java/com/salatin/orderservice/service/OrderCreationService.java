@@ -2,17 +2,20 @@ package com.salatin.orderservice.service;
 
 import com.salatin.orderservice.model.dto.Car;
 import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderEvent;
 import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.util.OrderResponseCreator;
 import com.salatin.orderservice.util.RoleChecker;
+import com.salatin.orderservice.util.TransactionRetry;
 import java.time.LocalDateTime;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.http.HttpHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.HttpStatusCode;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 
@@ -21,45 +24,29 @@ import reactor.core.publisher.Mono;
 @Log4j2
 public class OrderCreationService {
     private final OrderService orderService;
-    private final WebClient.Builder webClientBuilder;
+    private final CarServiceClient carServiceClient;
+    private final OrderStatisticsService orderStatisticsService;
+    private final TransactionalOperator transactionalOperator;
+    @Value("${orders.outbox.enabled:true}")
+    private boolean outboxEnabled;
 
     public Mono<Order> create(Order order, JwtAuthenticationToken authentication) {
-        var bearerToken = "Bearer " + authentication.getToken().getTokenValue();
         var carId = order.getCarId();
 
         return checkIfCarHasNotOpenedOrders(carId)
-                .then(getCarFromCarService(carId, bearerToken))
-                .flatMap(car -> registerOrder(order, car, authentication));
+                .then(carServiceClient.getCar(carId, authentication))
+                .flatMap(car -> registerOrder(order, car, authentication))
+                .flatMap(this::saveCounted)
+                // the partial unique index on carId catches concurrent creations that passed the check
+                .onErrorMap(DuplicateKeyException.class,
+                        e -> OrderResponseCreator.createCarInRepairConflictException());
     }
 
     private Mono<Void> checkIfCarHasNotOpenedOrders(String carId) {
-        return orderService.findAllByCarId(carId)
-                .filter(order -> !order.getStatus().equals(OrderStatus.PAYED)
-                        && !order.getStatus().equals(OrderStatus.CANCELED))
-                .collectList()
-                .flatMap(orders -> {
-                    if (orders.isEmpty()) {
-                        return Mono.empty();
-                    } else {
-                        return Mono.error(new ResponseStatusException(HttpStatus.CONFLICT,
-                                "This car is already in the process of repairing"));
-                    }
-                });
-    }
-
-    private Mono<Car> getCarFromCarService(String carId, String bearerToken) {
-        return webClientBuilder.build()
-                .get()
-                .uri("http://car-service/cars/{carId}", carId)
-                .header(HttpHeaders.AUTHORIZATION, bearerToken)
-                .retrieve()
-                .onStatus(HttpStatusCode::is5xxServerError,
-                        response -> Mono.error(new ResponseStatusException(
-                                HttpStatus.SERVICE_UNAVAILABLE, "Car service temporarily unavailable")))
-                .bodyToMono(Car.class)
-                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND,
-                        "Can't find a car with id: " + carId)))
-                .doOnNext(car -> log.info("Retrieved the car: {}", car));
+        return orderService.hasOpenOrderForCar(carId)
+                .flatMap(hasOpenOrder -> hasOpenOrder
+                        ? Mono.error(OrderResponseCreator.createCarInRepairConflictException())
+                        : Mono.empty());
     }
 
     private Mono<Order> registerOrder(Order order, Car car, JwtAuthenticationToken authentication) {
@@ -76,17 +63,43 @@ public class OrderCreationService {
         order.setStatus(OrderStatus.SUBMITTED);
         order.setManagerId(managerId);
         order.setSubmittedAt(LocalDateTime.now());
+        addCreatedEvent(order, managerId);
 
-        return orderService.save(order);
+        return Mono.just(order);
     }
 
     private Mono<Order> registerAsCustomer(Order order, String currentUserId) {
         if (order.getCustomerId().equals(currentUserId)) {
             order.setStatus(OrderStatus.CREATED);
-            return orderService.save(order);
+            addCreatedEvent(order, currentUserId);
+            return Mono.just(order);
         }
 
         return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN,
                 "Sorry, you are not owner of this car"));
     }
+
+    /**
+     * Saves the order and counts it in one transaction. An attempt aborted by a write conflict
+     * leaves the id and version of the insert in the order, they are reset before the next one.
+     */
+    private Mono<Order> saveCounted(Order order) {
+        var id = order.getId();
+        var version = order.getVersion();
+
+        return transactionalOperator.transactional(Mono.defer(() -> {
+                    order.setId(id);
+                    order.setVersion(version);
+                    return orderService.save(order);
+                })
+                .flatMap(savedOrder -> orderStatisticsService.recordCreation(savedOrder)
+                        .thenReturn(savedOrder)))
+                .retryWhen(TransactionRetry.onTransientErrors());
+    }
+
+    private void addCreatedEvent(Order order, String actorId) {
+        if (outboxEnabled) {
+            order.getOutbox().add(OrderEvent.of(OrderEvent.Type.CREATED, order.getStatus(), actorId));
+        }
+    }
 }
@@ -0,0 +1,244 @@
+package com.salatin.orderservice.service;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.sender.SenderRecord;
+import reactor.kafka.sender.SenderResult;
+
+/**
+ * Publishes the events waiting in the outbox of orders to Kafka, keyed by the order id so events
+ * of one order stay in order. The outbox is polled, a full batch is followed by the next one at once.
+ * Every replica relays: a replica first claims the orders of a batch with a lease in the order
+ * (outboxLockOwner and outboxLockedUntil), so an event is normally published by one replica only.
+ * Published events are pulled from the outbox without touching the version, so ETags stay valid.
+ * When an event of an order fails, none of its events are removed, the lease of the order is
+ * extended by the retry delay and all of them are sent again afterwards, so failing orders don't
+ * hold back the others. Events are delivered at least once, in the order they were written, and
+ * consumers drop duplicates, e.g. after an expired lease, by the event id.
+ * With orders.outbox.enabled=false no events are written to the outbox nor relayed.
+ */
+@Component
+@RequiredArgsConstructor
+@Log4j2
+public class OrderEventRelay {
+    private static final String OUTBOX_FIELD = "outbox";
+    private static final String PENDING_FIELD = "outbox.occurredAt";
+    private static final String EVENT_ID_FIELD = "eventId";
+    private static final String ID_FIELD = "id";
+    private static final String LOCK_OWNER_FIELD = "outboxLockOwner";
+    private static final String LOCKED_UNTIL_FIELD = "outboxLockedUntil";
+    private static final String EVENTS_METRIC = "orders.outbox.events";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ReactiveKafkaProducerTemplate<String, OrderEvent> orderEventProducerTemplate;
+    private final MeterRegistry meterRegistry;
+    @Value("${kafka.topic.order-events}")
+    private String topic;
+    @Value("${orders.outbox.enabled:true}")
+    private boolean enabled;
+    @Value("${orders.outbox.relay.poll-interval:500ms}")
+    private Duration pollInterval;
+    @Value("${orders.outbox.relay.batch-size:500}")
+    private int batchSize;
+    @Value("${orders.outbox.relay.lease:1m}")
+    private Duration lease;
+    @Value("${orders.outbox.relay.retry-delay:30s}")
+    private Duration retryDelay;
+    private Counter publishedCounter;
+    private Counter failedCounter;
+    private DistributionSummary batchSizeSummary;
+    private Timer lagTimer;
+    private Disposable relay;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        publishedCounter = meterRegistry.counter(EVENTS_METRIC, "outcome", "published");
+        failedCounter = meterRegistry.counter(EVENTS_METRIC, "outcome", "failed");
+        batchSizeSummary = DistributionSummary.builder("orders.outbox.batch.size")
+                .description("Events sent to Kafka in one relayed batch")
+                .baseUnit("events")
+                .register(meterRegistry);
+        lagTimer = Timer.builder("orders.outbox.lag")
+                .description("Time from the write of an event to its acknowledgement by Kafka")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+
+        // ticks arriving while a relay is still running are dropped, not queued
+        relay = Flux.interval(pollInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> relayPending()
+                        .onErrorResume(throwable -> {
+                            log.warn("Failed to relay order events: {}", throwable.getMessage());
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+    }
+
+    /**
+     * Stops polling before the Mongo client and the producer are closed.
+     */
+    @PreDestroy
+    public void destroy() {
+        if (relay != null) {
+            relay.dispose();
+        }
+    }
+
+    private Mono<Void> relayPending() {
+        return relayBatch()
+                .expand(relayed -> relayed == batchSize ? relayBatch() : Mono.empty())
+                .then();
+    }
+
+    /**
+     * Relays the outboxes of up to batch-size orders and returns how many orders were found,
+     * including those another replica claimed in between.
+     */
+    private Mono<Integer> relayBatch() {
+        var now = new Date();
+        var candidatesQuery = Query.query(createClaimableCriteria(now)).limit(batchSize);
+        candidatesQuery.fields().include(ID_FIELD);
+
+        return mongoTemplate.find(candidatesQuery, Order.class)
+                .map(Order::getId)
+                .collectList()
+                .flatMap(ids -> ids.isEmpty()
+                        ? Mono.just(0)
+                        : claim(ids, now)
+                                .flatMap(this::publish)
+                                .thenReturn(ids.size()));
+    }
+
+    /**
+     * Takes the lease of the orders no other replica holds, the orders claimed are read back
+     * by the token of this claim.
+     */
+    private Mono<Claim> claim(List<String> ids, Date now) {
+        var token = UUID.randomUUID().toString();
+        var claimQuery = Query.query(new Criteria().andOperator(Criteria.where(ID_FIELD).in(ids),
+                createClaimableCriteria(now)));
+        var claimUpdate = new Update()
+                .set(LOCK_OWNER_FIELD, token)
+                .set(LOCKED_UNTIL_FIELD, new Date(now.getTime() + lease.toMillis()));
+        var claimedQuery = Query.query(Criteria.where(ID_FIELD).in(ids).and(LOCK_OWNER_FIELD).is(token));
+        claimedQuery.fields().include(OUTBOX_FIELD);
+
+        return mongoTemplate.updateMulti(claimQuery, claimUpdate, Order.class)
+                .filter(result -> result.getModifiedCount() > 0)
+                .flatMap(result -> mongoTemplate.find(claimedQuery, Order.class).collectList())
+                .map(orders -> new Claim(token, orders));
+    }
+
+    private Criteria createClaimableCriteria(Date now) {
+        return new Criteria().andOperator(Criteria.where(PENDING_FIELD).exists(true),
+                new Criteria().orOperator(Criteria.where(LOCKED_UNTIL_FIELD).exists(false),
+                        Criteria.where(LOCKED_UNTIL_FIELD).lt(now)));
+    }
+
+    private Mono<Void> publish(Claim claim) {
+        claim.orders().forEach(order -> order.getOutbox().forEach(event -> event.setOrderId(order.getId())));
+        var events = claim.orders().stream()
+                .flatMap(order -> order.getOutbox().stream())
+                .toList();
+        batchSizeSummary.record(events.size());
+        Set<String> failedOrderIds = new HashSet<>();
+
+        return orderEventProducerTemplate.send(Flux.fromIterable(events)
+                        .map(event -> SenderRecord.create(
+                                new ProducerRecord<>(topic, event.getOrderId(), event), event)))
+                .doOnNext(result -> {
+                    var event = result.correlationMetadata();
+                    if (result.exception() != null) {
+                        failedCounter.increment();
+                        failedOrderIds.add(event.getOrderId());
+                        log.warn("Failed to publish event {} of order {}: {}", event.getEventId(),
+                                event.getOrderId(), result.exception().getMessage());
+                    } else {
+                        publishedCounter.increment();
+                        lagTimer.record(Duration.between(event.getOccurredAt(), LocalDateTime.now()));
+                    }
+                })
+                .map(SenderResult::correlationMetadata)
+                .collectList()
+                .flatMap(sent -> release(claim.token(), sent, failedOrderIds));
+    }
+
+    /**
+     * Pulls the published events by their ids and drops the lease, events pushed meanwhile stay
+     * in the outbox. Failed orders keep the lease until the retry delay has passed. Orders whose
+     * lease has expired and was taken by another replica are left to it.
+     */
+    private Mono<Void> release(String token, List<OrderEvent> sent, Set<String> failedOrderIds) {
+        var converter = mongoTemplate.getConverter();
+        var retryAt = new Date(System.currentTimeMillis() + retryDelay.toMillis());
+        var publishedUpdates = sent.stream()
+                .filter(event -> !failedOrderIds.contains(event.getOrderId()))
+                .collect(Collectors.groupingBy(OrderEvent::getOrderId,
+                        Collectors.mapping(OrderEvent::getEventId, Collectors.toList())))
+                .entrySet().stream()
+                .map(entry -> new UpdateOneModel<Document>(
+                        createOwnedFilter(converter.convertId(entry.getKey(), ObjectId.class), token),
+                        new Document("$pull", new Document(OUTBOX_FIELD,
+                                new Document(EVENT_ID_FIELD, new Document("$in", entry.getValue()))))
+                                .append("$unset", new Document(LOCK_OWNER_FIELD, "")
+                                        .append(LOCKED_UNTIL_FIELD, ""))));
+        var failedUpdates = failedOrderIds.stream()
+                .map(orderId -> new UpdateOneModel<Document>(
+                        createOwnedFilter(converter.convertId(orderId, ObjectId.class), token),
+                        new Document("$set", new Document(LOCKED_UNTIL_FIELD, retryAt))));
+        var updates = Stream.concat(publishedUpdates, failedUpdates).toList();
+        if (updates.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Order.class))
+                .flatMap(collection -> Mono.from(
+                        collection.bulkWrite(updates, new BulkWriteOptions().ordered(false))))
+                .then();
+    }
+
+    private Bson createOwnedFilter(Object id, String token) {
+        return Filters.and(Filters.eq("_id", id), Filters.eq(LOCK_OWNER_FIELD, token));
+    }
+
+    private record Claim(String token, List<Order> orders) {
+    }
+}
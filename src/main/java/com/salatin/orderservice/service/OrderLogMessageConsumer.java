@@ -1,39 +1,219 @@
 package com.salatin.orderservice.service;
 
 import com.salatin.orderservice.model.dto.LogMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import io.micrometer.observation.transport.ReceiverContext;
 import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.reactive.ReactiveKafkaConsumerTemplate;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.ReceiverRecord;
+import reactor.util.retry.Retry;
 
 @Component
 @RequiredArgsConstructor
 @Log4j2
 public class OrderLogMessageConsumer {
+    private static final String APPEND_METRIC = "order.logs.append";
+    private static final String RECEIVE_OBSERVATION = "order.logs.receive";
+
     private final ReactiveKafkaConsumerTemplate<String, LogMessage> consumerTemplate;
     private final OrderService orderService;
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final AtomicInteger inFlightRecords = new AtomicInteger();
+    private final AtomicLong consumerLag = new AtomicLong();
+    @Value("${kafka.consumer.order-logs.batch-size:500}")
+    private int batchSize;
+    @Value("${kafka.consumer.order-logs.linger:100ms}")
+    private Duration linger;
+    @Value("${kafka.consumer.order-logs.concurrency:4}")
+    private int concurrency;
+    @Value("${kafka.consumer.order-logs.write-retries:3}")
+    private int writeRetries;
+    @Value("${kafka.consumer.order-logs.lag-refresh-interval:10s}")
+    private Duration lagRefreshInterval;
+    private Counter recordsCounter;
+    private DistributionSummary batchFillRatio;
+    private DistributionSummary batchSizes;
 
+    /**
+     * Spreads records over lanes by order key. Lanes are written in parallel, while batches
+     * of one lane are written one after another, so messages of the same order keep their order.
+     * Offsets are acknowledged only after the batch is persisted, and the receiver stops polling
+     * when lanes fall behind. A batch that can't be written after the retries fails the flux, so
+     * its records are received again from the committed offsets once the consumer resubscribes,
+     * logs already written are skipped by their log ids. Each record is observed from receipt
+     * to acknowledgement as a child of the trace found in its headers, the batch write belongs
+     * to the trace of its oldest record.
+     * Batches are windows with fair backpressure: a lane that is still writing doesn't request
+     * the next window, so the linger timer never overflows it as bufferTimeout would.
+     */
     public Flux<LogMessage> consumeOrderLogUpdates() {
-        return consumerTemplate.receiveAutoAck()
-                .doOnNext(record -> {
-                    var orderId = record.key();
-                    var logMessage = record.value();
-                    var offset = record.offset();
+        return consumerTemplate.receive()
+                .map(record -> {
+                    inFlightRecords.incrementAndGet();
+                    log.debug("Received key={}, value={} from topic={}, offset={}",
+                            record.key(), record.value(), record.topic(), record.offset());
+                    return new ObservedRecord(record, startObservation(record));
+                })
+                .groupBy(record -> laneOf(record.receiverRecord().key()))
+                .flatMap(lane -> lane
+                        .windowTimeout(batchSize, linger, true)
+                        .concatMap(window -> window.collectList()
+                                .filter(records -> !records.isEmpty())
+                                .flatMap(this::writeBatch)), concurrency)
+                .flatMapIterable(records -> records)
+                .map(record -> record.receiverRecord().value());
+    }
+
+    private Observation startObservation(ReceiverRecord<String, LogMessage> record) {
+        var context = new ReceiverContext<ReceiverRecord<String, LogMessage>>((carrier, key) ->
+                Optional.ofNullable(carrier.headers().lastHeader(key))
+                        .map(Header::value)
+                        .map(value -> new String(value, StandardCharsets.UTF_8))
+                        .orElse(null));
+        context.setCarrier(record);
+        context.setRemoteServiceName("kafka");
+
+        return Observation.createNotStarted(RECEIVE_OBSERVATION, () -> context, observationRegistry)
+                .contextualName(record.topic() + " receive")
+                .lowCardinalityKeyValue("topic", record.topic())
+                .start();
+    }
+
+    private int laneOf(String orderId) {
+        return orderId == null ? 0 : Math.floorMod(orderId.hashCode(), concurrency);
+    }
+
+    private Mono<List<ObservedRecord>> writeBatch(List<ObservedRecord> records) {
+        recordsCounter.increment(records.size());
+        batchFillRatio.record((double) records.size() / batchSize);
+        batchSizes.record(records.size());
+
+        return appendLogs(records)
+                .retryWhen(Retry.backoff(writeRetries, Duration.ofMillis(200)))
+                .doOnError(throwable -> {
+                    log.error("Failed to save a batch of {} log messages, it will be received again: {}",
+                            records.size(), throwable.getMessage());
+                    records.forEach(record -> record.observation().error(throwable));
+                })
+                .then(Mono.fromRunnable(() -> {
+                    records.forEach(record -> {
+                        record.receiverRecord().receiverOffset().acknowledge();
+                        record.observation().stop();
+                    });
+                    inFlightRecords.addAndGet(-records.size());
+                }))
+                .thenReturn(records);
+    }
 
-                    log.info("Received key={}, value={} from topic={}, offset={}",
-                            orderId, logMessage, record.topic(), offset);
+    private Mono<Void> appendLogs(List<ObservedRecord> records) {
+        return Mono.defer(() -> {
+            var sample = Timer.start(meterRegistry);
 
-                    orderService.addLogToOrder(orderId, logMessage);
+            return orderService.addLogsToOrders(groupByOrderId(records))
+                    .doOnSuccess(ignored -> sample.stop(meterRegistry.timer(APPEND_METRIC, "outcome", "SUCCESS")))
+                    .doOnError(throwable -> sample.stop(meterRegistry.timer(APPEND_METRIC, "outcome", "ERROR")));
+        }).contextWrite(context -> context.put(ObservationThreadLocalAccessor.KEY, records.get(0).observation()));
+    }
+
+    private Map<String, List<LogMessage>> groupByOrderId(List<ObservedRecord> records) {
+        Map<String, List<LogMessage>> logsByOrderId = new LinkedHashMap<>();
+        records.forEach(record -> {
+            var receiverRecord = record.receiverRecord();
+            var logMessage = receiverRecord.value();
+            logMessage.setLogId(receiverRecord.topic() + "-" + receiverRecord.partition() + "-"
+                    + receiverRecord.offset());
+            logsByOrderId.computeIfAbsent(receiverRecord.key(), orderId -> new ArrayList<>())
+                    .add(logMessage);
+        });
+
+        return logsByOrderId;
+    }
+
+    private Mono<Long> refreshConsumerLag() {
+        return consumerTemplate.doOnConsumer(this::calculateLag)
+                .doOnNext(consumerLag::set)
+                .onErrorResume(throwable -> {
+                    log.debug("Can't calculate consumer lag: {}", throwable.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private long calculateLag(Consumer<String, LogMessage> consumer) {
+        var assignment = consumer.assignment();
+        var endOffsets = consumer.endOffsets(assignment);
+        var committed = consumer.committed(assignment);
+
+        return assignment.stream()
+                .mapToLong(partition -> {
+                    var committedOffset = committed.get(partition);
+                    var position = committedOffset == null
+                            ? consumer.position(partition)
+                            : committedOffset.offset();
+                    return Math.max(0, endOffsets.getOrDefault(partition, position) - position);
                 })
-                .map(ConsumerRecord::value);
+                .sum();
     }
 
     @PostConstruct
     public void init() {
+        recordsCounter = Counter.builder("order.logs.consumer.records")
+                .description("Log messages received from Kafka")
+                .register(meterRegistry);
+        batchFillRatio = DistributionSummary.builder("order.logs.consumer.batch.fill.ratio")
+                .description("Batch size relative to the configured maximum")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("order.logs.consumer.batch.size")
+                .description("Log messages written with one bulk write")
+                .baseUnit("records")
+                .register(meterRegistry);
+        Gauge.builder("order.logs.consumer.in-flight", inFlightRecords, AtomicInteger::get)
+                .description("Records received but not yet persisted and acknowledged")
+                .register(meterRegistry);
+        Gauge.builder("order.logs.consumer.lag", consumerLag, AtomicLong::get)
+                .description("Records between the committed offsets and the end of the assigned partitions")
+                .register(meterRegistry);
+
         log.info("In init(), running consumeOrderLogUpdates()");
-        this.consumeOrderLogUpdates().subscribe();
+        // records that weren't acknowledged before a failure are received again after resubscribing
+        Flux.defer(() -> {
+                    inFlightRecords.set(0);
+                    return consumeOrderLogUpdates();
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Order logs consumer failed, resubscribing: {}",
+                                signal.failure().getMessage())))
+                .subscribe(null, throwable -> log.error("Order logs consumer stopped", throwable));
+        Flux.interval(lagRefreshInterval)
+                .concatMap(tick -> refreshConsumerLag())
+                .subscribe();
+    }
+
+    private record ObservedRecord(ReceiverRecord<String, LogMessage> receiverRecord, Observation observation) {
     }
 }
@@ -0,0 +1,175 @@
+package com.salatin.orderservice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.salatin.orderservice.model.OrderStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.server.NotAcceptableStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps listing pages that many screens ask for at once for a few seconds, already serialized
+ * to JSON or to a binary format the caller accepts, bounded by the bytes of the serialized pages.
+ * Identical requests arriving while a page is computed wait for that computation.
+ * Pages of a status are dropped as soon as an order enters or leaves it, pages over all statuses
+ * on every status change. Log appends don't drop pages, they show up when the page expires.
+ */
+@Component
+@RequiredArgsConstructor
+public class OrderPageCache {
+    private static final ResolvableType PAGE_TYPE = ResolvableType.forClass(List.class);
+    private static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
+    private static final List<MediaType> PAGE_MEDIA_TYPES = List.of(MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_CBOR, APPLICATION_SMILE);
+
+    private final ServerCodecConfigurer serverCodecConfigurer;
+    private final MeterRegistry meterRegistry;
+    @Value("${orders.page-cache.enabled:true}")
+    private boolean enabled;
+    @Value("${orders.page-cache.max-weight:33554432}")
+    private long maxWeight;
+    @Value("${orders.page-cache.max-page-size:1000}")
+    private int maxPageSize;
+    @Value("${orders.page-cache.ttl:3s}")
+    private Duration ttl;
+    private AsyncCache<PageKey, SerializedPage> pages;
+    private Counter coalescedCounter;
+    private Counter invalidatedCounter;
+    private Map<MediaType, Encoder<?>> encoders;
+
+    @PostConstruct
+    public void init() {
+        encoders = new LinkedHashMap<>();
+        PAGE_MEDIA_TYPES.forEach(mediaType -> serverCodecConfigurer.getWriters().stream()
+                .filter(EncoderHttpMessageWriter.class::isInstance)
+                .map(writer -> ((EncoderHttpMessageWriter<?>) writer).getEncoder())
+                .filter(encoder -> encoder.canEncode(PAGE_TYPE, mediaType))
+                .findFirst()
+                .ifPresent(encoder -> encoders.put(mediaType, encoder)));
+
+        if (!enabled) {
+            return;
+        }
+
+        pages = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((PageKey key, SerializedPage page) -> page.body().length)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync(), "orders.pages");
+        coalescedCounter = Counter.builder("orders.pages.coalesced")
+                .description("Page requests served by an already running computation of the same page")
+                .register(meterRegistry);
+        invalidatedCounter = Counter.builder("orders.pages.invalidated")
+                .description("Pages dropped before expiry because an order changed its status")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Pages larger than max-page-size orders are computed for the request alone and not cached.
+     */
+    public Mono<SerializedPage> get(PageKey key, Supplier<Mono<SerializedPage>> loader) {
+        if (!enabled || key.size() > maxPageSize) {
+            return loader.get();
+        }
+
+        return Mono.defer(() -> {
+            var inFlight = pages.asMap().get(key);
+            if (inFlight != null && !inFlight.isDone()) {
+                coalescedCounter.increment();
+            }
+
+            // cancellation of one subscriber must not cancel the computation shared with the others
+            return Mono.fromFuture(pages.get(key, (pageKey, executor) -> loader.get().toFuture()), true);
+        });
+    }
+
+    /**
+     * Picks the format a page can be written in that the caller prefers, by quality first and then
+     * by the most specific media type. JSON when nothing is asked for, 406 when nothing matches.
+     */
+    public MediaType selectMediaType(List<MediaType> acceptedMediaTypes) {
+        if (acceptedMediaTypes.isEmpty()) {
+            return MediaType.APPLICATION_JSON;
+        }
+
+        var sorted = new ArrayList<>(acceptedMediaTypes);
+        MimeTypeUtils.sortBySpecificity(sorted);
+        sorted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+
+        return sorted.stream()
+                .filter(accepted -> accepted.getQualityValue() > 0)
+                .flatMap(accepted -> encoders.keySet().stream().filter(accepted::includes))
+                .findFirst()
+                .orElseThrow(() -> new NotAcceptableStatusException(List.copyOf(encoders.keySet())));
+    }
+
+    /**
+     * Writes the page with the same encoder WebFlux would use for the media type, so cached
+     * pages look exactly like the rest of the responses.
+     */
+    @SuppressWarnings("unchecked")
+    public Mono<SerializedPage> serialize(List<?> items, MediaType mediaType, String nextCursor) {
+        return Mono.fromCallable(() -> {
+            var encoder = (Encoder<Object>) encoders.get(mediaType);
+            var dataBuffer = encoder.encodeValue(items, DefaultDataBufferFactory.sharedInstance, PAGE_TYPE,
+                    mediaType, Map.of());
+            try {
+                var body = new byte[dataBuffer.readableByteCount()];
+                dataBuffer.read(body);
+                return new SerializedPage(body, nextCursor);
+            } finally {
+                DataBufferUtils.release(dataBuffer);
+            }
+        });
+    }
+
+    public void invalidateStatuses(Collection<OrderStatus> statuses) {
+        if (!enabled || statuses.isEmpty()) {
+            return;
+        }
+
+        var statusNames = statuses.stream()
+                .map(OrderStatus::name)
+                .toList();
+        pages.asMap().keySet().removeIf(key -> {
+            var affected = key.status() == null || statusNames.contains(key.status());
+            if (affected) {
+                invalidatedCounter.increment();
+            }
+            return affected;
+        });
+    }
+
+    /**
+     * Everything that selects a page and its format, the status is null for listings over all statuses.
+     */
+    public record PageKey(String endpoint, String status, Integer page, Integer size, String sortByField,
+                          String direction, String after, MediaType mediaType) {
+    }
+
+    public record SerializedPage(byte[] body, String nextCursor) {
+    }
+}
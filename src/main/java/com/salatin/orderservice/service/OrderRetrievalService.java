@@ -16,4 +16,10 @@ public class OrderRetrievalService {
                 .switchIfEmpty(Mono.error(() ->
                         OrderResponseCreator.createOrderNotFoundException(orderId)));
     }
+
+    public Mono<Long> findVersionByIdOrError(String orderId) {
+        return orderService.findVersionById(orderId)
+                .switchIfEmpty(Mono.error(() ->
+                        OrderResponseCreator.createOrderNotFoundException(orderId)));
+    }
 }
@@ -1,8 +1,18 @@
 package com.salatin.orderservice.service;
 
+import com.salatin.orderservice.model.OrderCursor;
 import com.salatin.orderservice.model.dto.LogMessage;
 import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.model.OrderStatusUpdate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Update;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -12,13 +22,33 @@ public interface OrderService {
 
     Mono<Order> findById(String id);
 
-    Flux<Order> findAll(PageRequest pageRequest);
+    <T> Flux<T> findAll(PageRequest pageRequest, Class<T> type);
 
-    Flux<Order> findAllByStatus(PageRequest pageRequest, String status);
+    <T> Flux<T> findAllAfter(OrderCursor cursor, PageRequest pageRequest, Class<T> type);
 
-    Flux<Order> findAllByCarId(String carId);
+    <T> Flux<T> findAllByStatus(PageRequest pageRequest, String status, Class<T> type);
 
-    Flux<Order> findAllByUser(String userId, PageRequest pageRequest);
+    <T> Flux<T> findAllByStatusAfter(OrderCursor cursor, PageRequest pageRequest, String status,
+                                     Class<T> type);
 
-    void addLogToOrder(String orderId, LogMessage logMessage);
+    Mono<Boolean> hasOpenOrderForCar(String carId);
+
+    <T> Flux<T> findAllByUser(String userId, PageRequest pageRequest, Class<T> type);
+
+    <T> Flux<T> findAllByUserAfter(String userId, OrderCursor cursor, PageRequest pageRequest,
+                                   Class<T> type);
+
+    Mono<OrderStatus> findStatusById(String id);
+
+    Mono<Long> findVersionById(String id);
+
+    Mono<Order> updateStatusIfIn(String id, Set<OrderStatus> expectedStatuses, Update update);
+
+    Mono<Map<String, Order>> findAllWithStatusByIds(Collection<String> ids);
+
+    Mono<Long> updateStatuses(List<OrderStatusUpdate> statusUpdates);
+
+    Optional<OrderCursor> createCursor(Object order, Sort sort);
+
+    Mono<Void> addLogsToOrders(Map<String, List<LogMessage>> logsByOrderId);
 }
@@ -0,0 +1,214 @@
+package com.salatin.orderservice.service;
+
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderStage;
+import com.salatin.orderservice.model.OrderStageHistogram;
+import com.salatin.orderservice.model.dto.response.OrderStagePercentilesResponseDto;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * Records how long orders spend in every {@link OrderStage} into histograms per stage, day and
+ * mechanic. A duration is added when the transition that ends its stage is applied, with one
+ * atomic increment of its bucket, so percentiles over a date range are read from the histograms
+ * of those days without touching the orders.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class OrderStageHistogramService {
+    private static final long MAX_SECONDS = Duration.ofDays(365).toSeconds();
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final Histogram BUCKETS = new Histogram(MAX_SECONDS, SIGNIFICANT_DIGITS);
+    private static final String ID_FIELD = "_id";
+    private static final String ALL_MECHANICS = "all";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final TransactionalOperator transactionalOperator;
+    @Value("${orders.query.cursor-batch-size:500}")
+    private int cursorBatchSize;
+
+    /**
+     * Records the stages ended by transitions given as pairs of the order before and after the change.
+     * The histograms are written one after another, as part of the transaction of the transitions.
+     */
+    public Mono<Void> recordTransitions(List<Tuple2<Order, Order>> transitions) {
+        var histograms = new HashMap<String, OrderStageHistogram>();
+        transitions.forEach(transition -> addEndedStages(histograms, transition.getT1(), transition.getT2()));
+
+        return Flux.fromIterable(histograms.values())
+                .concatMap(this::increment)
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Can't record order stage durations: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    public Flux<OrderStagePercentilesResponseDto> getPercentiles(LocalDate from, LocalDate to, String mechanicId) {
+        var query = Query.query(Criteria.where("mechanicId").is(mechanicId)
+                .and("date").gte(from.toString()).lte(to.toString()));
+
+        return mongoTemplate.find(query, OrderStageHistogram.class)
+                .collect(() -> new EnumMap<OrderStage, Histogram>(OrderStage.class),
+                        (merged, histogram) -> {
+                            var stageHistogram = merged.computeIfAbsent(histogram.getStage(),
+                                    stage -> new Histogram(MAX_SECONDS, SIGNIFICANT_DIGITS));
+                            histogram.getBuckets().forEach(stageHistogram::recordValueWithCount);
+                        })
+                .flatMapIterable(merged -> merged.entrySet().stream()
+                        .map(entry -> toPercentiles(entry.getKey(), entry.getValue()))
+                        .toList());
+    }
+
+    /**
+     * Rebuilds all histograms from the orders in one streaming pass. The histograms are built
+     * in memory, their size depends on stages, days and mechanics but not on the number of orders.
+     * The pass and the read of the stored histograms run in one snapshot transaction, and the stored
+     * histograms are then incremented by the difference, the same way transitions record them, so
+     * transitions applied meanwhile are kept. Histograms the pass doesn't produce are decremented
+     * to zero and removed unless a transition recorded into them meanwhile. The pass has to finish
+     * within the transaction lifetime limit of the server, 60s by default.
+     */
+    public Mono<Long> backfill() {
+        // every stage ends when the car is received or later
+        var query = new Query(Criteria.where("carReceivedAt").ne(null))
+                .cursorBatchSize(cursorBatchSize);
+        query.fields().include("mechanicId").include(OrderStage.TIMESTAMP_FIELDS);
+        var emptyOrder = new Order();
+
+        return Mono.defer(() -> {
+            var orders = new AtomicLong();
+
+            // operations of one transaction run one after another
+            return transactionalOperator.transactional(mongoTemplate.find(query, Order.class)
+                            .doOnNext(order -> orders.incrementAndGet())
+                            .collect(HashMap<String, OrderStageHistogram>::new,
+                                    (histograms, order) -> addEndedStages(histograms, emptyOrder, order))
+                            .zipWhen(rebuilt -> mongoTemplate.findAll(OrderStageHistogram.class)
+                                    .collectMap(OrderStageHistogram::getId)))
+                    .flatMap(read -> applyDifference(read.getT1(), read.getT2()))
+                    .then(Mono.fromSupplier(orders::get))
+                    .doOnNext(count -> log.info("Order stage histograms rebuilt from {} orders", count));
+        });
+    }
+
+    private Mono<Void> applyDifference(Map<String, OrderStageHistogram> rebuilt,
+                                       Map<String, OrderStageHistogram> stored) {
+        var ids = new HashSet<>(rebuilt.keySet());
+        ids.addAll(stored.keySet());
+        var staleIds = stored.keySet().stream()
+                .filter(id -> !rebuilt.containsKey(id))
+                .toList();
+
+        return Flux.fromIterable(ids)
+                .map(id -> subtract(rebuilt.get(id), stored.get(id)))
+                .filter(difference -> difference.getCount() != 0 || !difference.getBuckets().isEmpty())
+                .flatMap(this::increment)
+                .then(Mono.defer(() -> staleIds.isEmpty()
+                        ? Mono.empty()
+                        : mongoTemplate.remove(Query.query(Criteria.where(ID_FIELD).in(staleIds)
+                                        .and("count").is(0)), OrderStageHistogram.class)
+                                .then()));
+    }
+
+    /**
+     * Either histogram may be missing, the difference carries the key of the one present.
+     */
+    private OrderStageHistogram subtract(OrderStageHistogram rebuilt, OrderStageHistogram stored) {
+        var key = rebuilt != null ? rebuilt : stored;
+        var difference = new OrderStageHistogram();
+        difference.setId(key.getId());
+        difference.setStage(key.getStage());
+        difference.setDate(key.getDate());
+        difference.setMechanicId(key.getMechanicId());
+        difference.setCount((rebuilt == null ? 0 : rebuilt.getCount()) - (stored == null ? 0 : stored.getCount()));
+        if (rebuilt != null) {
+            difference.getBuckets().putAll(rebuilt.getBuckets());
+        }
+        if (stored != null) {
+            stored.getBuckets().forEach((bucket, count) -> difference.getBuckets().merge(bucket, -count, Long::sum));
+        }
+        difference.getBuckets().values().removeIf(count -> count == 0);
+
+        return difference;
+    }
+
+    private void addEndedStages(Map<String, OrderStageHistogram> histograms, Order previous, Order current) {
+        for (var stage : OrderStage.values()) {
+            var start = stage.getStart().apply(current);
+            var end = stage.getEnd().apply(current);
+            if (start == null || end == null || stage.getEnd().apply(previous) != null) {
+                continue;
+            }
+
+            var seconds = Math.min(Math.max(Duration.between(start, end).toSeconds(), 0), MAX_SECONDS);
+            var date = end.toLocalDate().toString();
+            addDuration(histograms, stage, date, null, seconds);
+            if (current.getMechanicId() != null) {
+                addDuration(histograms, stage, date, current.getMechanicId(), seconds);
+            }
+        }
+    }
+
+    private void addDuration(Map<String, OrderStageHistogram> histograms,
+                             OrderStage stage,
+                             String date,
+                             String mechanicId,
+                             long seconds) {
+        var id = String.join(":", stage.name(), date, mechanicId == null ? ALL_MECHANICS : mechanicId);
+        var histogram = histograms.computeIfAbsent(id, key -> {
+            var newHistogram = new OrderStageHistogram();
+            newHistogram.setId(key);
+            newHistogram.setStage(stage);
+            newHistogram.setDate(date);
+            newHistogram.setMechanicId(mechanicId);
+            return newHistogram;
+        });
+        histogram.setCount(histogram.getCount() + 1);
+        histogram.getBuckets().merge(BUCKETS.lowestEquivalentValue(seconds), 1L, Long::sum);
+    }
+
+    private Mono<Void> increment(OrderStageHistogram histogram) {
+        var update = new Update()
+                .setOnInsert("stage", histogram.getStage())
+                .setOnInsert("date", histogram.getDate())
+                .setOnInsert("mechanicId", histogram.getMechanicId())
+                .inc("count", histogram.getCount());
+        histogram.getBuckets().forEach((bucket, count) -> update.inc("buckets." + bucket, count));
+
+        return mongoTemplate.upsert(Query.query(Criteria.where(ID_FIELD).is(histogram.getId())), update,
+                        OrderStageHistogram.class)
+                .then();
+    }
+
+    private OrderStagePercentilesResponseDto toPercentiles(OrderStage stage, Histogram histogram) {
+        var percentiles = new OrderStagePercentilesResponseDto();
+        percentiles.setStage(stage);
+        percentiles.setCount(histogram.getTotalCount());
+        percentiles.setP50Seconds(histogram.getValueAtPercentile(50));
+        percentiles.setP90Seconds(histogram.getValueAtPercentile(90));
+        percentiles.setP99Seconds(histogram.getValueAtPercentile(99));
+        percentiles.setMaxSeconds(histogram.getMaxValue());
+        return percentiles;
+    }
+}
@@ -0,0 +1,294 @@
+package com.salatin.orderservice.service;
+
+import com.salatin.orderservice.model.DailyOrderStatistics;
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderStatistics;
+import com.salatin.orderservice.model.OrderStatus;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * Keeps order counters in one document per scope, so that statistics are read by id whatever
+ * the size of the orders collection. Counters are incremented in the transaction of every creation
+ * and transition, and a periodic aggregation over the orders corrects any drift, for example
+ * after the counters were edited by hand. The correction is applied as increments too, so changes
+ * counted meanwhile are kept, and only the replica holding the reconciliation lease runs it.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class OrderStatisticsService {
+    private static final String CURRENT_ID = "current";
+    private static final String ID_FIELD = "_id";
+    private static final String COUNT_FIELD = "count";
+    private static final String STATUS_FIELD = "status";
+    private static final String MECHANIC_ID_FIELD = "mechanicId";
+    private static final String MANAGER_ID_FIELD = "managerId";
+    private static final String STATUSES_FIELD = "statuses";
+    private static final String MECHANICS_FIELD = "mechanics";
+    private static final String MANAGERS_FIELD = "managers";
+    private static final String CREATED_FIELD = "created";
+    private static final String COMPLETED_FIELD = "completed";
+    private static final String PAID_FIELD = "paid";
+    private static final String LEASES_COLLECTION = "order_statistics_leases";
+    private static final String RECONCILIATION_LEASE_ID = "reconciliation";
+    private static final String LEASE_OWNER_FIELD = "owner";
+    private static final String LEASE_UNTIL_FIELD = "lockedUntil";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final TransactionalOperator transactionalOperator;
+    private final String instanceId = UUID.randomUUID().toString();
+    @Value("${orders.statistics.reconciliation-delay:30s}")
+    private Duration reconciliationDelay;
+    @Value("${orders.statistics.reconciliation-interval:10m}")
+    private Duration reconciliationInterval;
+
+    @PostConstruct
+    public void init() {
+        Flux.interval(reconciliationDelay, reconciliationInterval)
+                .concatMap(tick -> reconcile()
+                        .onErrorResume(e -> {
+                            log.warn("Can't reconcile order statistics: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    public Mono<OrderStatistics> getStatistics() {
+        return mongoTemplate.findById(CURRENT_ID, OrderStatistics.class)
+                .defaultIfEmpty(new OrderStatistics());
+    }
+
+    public Mono<DailyOrderStatistics> getDailyStatistics(LocalDate date) {
+        return mongoTemplate.findById(date.toString(), DailyOrderStatistics.class)
+                .defaultIfEmpty(new DailyOrderStatistics());
+    }
+
+    /**
+     * Runs in the transaction of the creation, if there is one.
+     */
+    public Mono<Void> recordCreation(Order order) {
+        var deltas = new HashMap<String, Long>();
+        addCounters(deltas, order, 1);
+
+        return increment(deltas, Map.of(CREATED_FIELD, 1L));
+    }
+
+    /**
+     * Records transitions given as pairs of the order before and after the change, in the
+     * transaction of the transitions if there is one.
+     */
+    public Mono<Void> recordTransitions(List<Tuple2<Order, Order>> transitions) {
+        var deltas = new HashMap<String, Long>();
+        var dailyDeltas = new HashMap<String, Long>();
+        transitions.forEach(transition -> {
+            addCounters(deltas, transition.getT1(), -1);
+            addCounters(deltas, transition.getT2(), 1);
+            if (transition.getT2().getStatus() == OrderStatus.COMPLETED) {
+                dailyDeltas.merge(COMPLETED_FIELD, 1L, Long::sum);
+            } else if (transition.getT2().getStatus() == OrderStatus.PAYED) {
+                dailyDeltas.merge(PAID_FIELD, 1L, Long::sum);
+            }
+        });
+
+        return increment(deltas, dailyDeltas);
+    }
+
+    /**
+     * Recounts everything with one aggregation pass over the orders, if this replica holds the lease.
+     */
+    public Mono<Void> reconcile() {
+        return acquireLease()
+                .filter(Boolean::booleanValue)
+                .flatMap(acquired -> recount());
+    }
+
+    /**
+     * The holder renews the lease with every run, another replica takes over once it has expired
+     * for two intervals. A held lease makes the upsert insert a second lease, which fails on its id.
+     */
+    private Mono<Boolean> acquireLease() {
+        var now = new Date();
+        var query = Query.query(Criteria.where(ID_FIELD).is(RECONCILIATION_LEASE_ID)
+                .orOperator(Criteria.where(LEASE_OWNER_FIELD).is(instanceId),
+                        Criteria.where(LEASE_UNTIL_FIELD).lt(now)));
+        var update = new Update()
+                .set(LEASE_OWNER_FIELD, instanceId)
+                .set(LEASE_UNTIL_FIELD, new Date(now.getTime() + reconciliationInterval.multipliedBy(2).toMillis()));
+
+        return mongoTemplate.upsert(query, update, LEASES_COLLECTION)
+                .thenReturn(true)
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false));
+    }
+
+    /**
+     * Reads the counters and recounts the orders in one snapshot transaction, so their difference
+     * is exact for that moment. Every later change increments the counters and the recount alike,
+     * so the difference is applied after the transaction: written in it, it would conflict with
+     * every transition committed during the scan. The scan has to finish within the transaction
+     * lifetime limit of the server, 60s by default.
+     */
+    private Mono<Void> recount() {
+        var today = LocalDate.now();
+        var startOfDay = today.atStartOfDay();
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.facet(Aggregation.group(STATUS_FIELD).count().as(COUNT_FIELD))
+                        .as(STATUSES_FIELD)
+                        .and(Aggregation.match(Criteria.where(MECHANIC_ID_FIELD).ne(null)),
+                                Aggregation.group(MECHANIC_ID_FIELD, STATUS_FIELD).count().as(COUNT_FIELD))
+                        .as(MECHANICS_FIELD)
+                        .and(Aggregation.match(Criteria.where(MANAGER_ID_FIELD).ne(null)),
+                                Aggregation.group(MANAGER_ID_FIELD, STATUS_FIELD).count().as(COUNT_FIELD))
+                        .as(MANAGERS_FIELD)
+                        .and(Aggregation.match(Criteria.where("createdAt").gte(startOfDay)),
+                                Aggregation.count().as(COUNT_FIELD))
+                        .as(CREATED_FIELD)
+                        .and(Aggregation.match(Criteria.where("finishedWorksAt").gte(startOfDay)),
+                                Aggregation.count().as(COUNT_FIELD))
+                        .as(COMPLETED_FIELD)
+                        .and(Aggregation.match(Criteria.where("orderPaidAt").gte(startOfDay)),
+                                Aggregation.count().as(COUNT_FIELD))
+                        .as(PAID_FIELD));
+
+        // operations of one transaction run one after another
+        return transactionalOperator.transactional(getStatistics()
+                        .zipWhen(statistics -> getDailyStatistics(today))
+                        .zipWhen(snapshot -> mongoTemplate.aggregate(aggregation, Order.class, Document.class)
+                                .next()))
+                .flatMap(read -> correct(read.getT1().getT1(), read.getT1().getT2(), read.getT2(), today))
+                .doOnSuccess(ignored -> log.debug("Order statistics reconciled"));
+    }
+
+    private Mono<Void> correct(OrderStatistics snapshot,
+                               DailyOrderStatistics dailySnapshot,
+                               Document result,
+                               LocalDate today) {
+        var statistics = new OrderStatistics();
+        result.getList(STATUSES_FIELD, Document.class).stream()
+                .filter(group -> group.get(ID_FIELD) != null)
+                .forEach(group -> statistics.getStatuses().put(
+                        OrderStatus.valueOf(group.getString(ID_FIELD)), readCount(group)));
+        readUserCounters(result.getList(MECHANICS_FIELD, Document.class),
+                MECHANIC_ID_FIELD, statistics.getMechanics());
+        readUserCounters(result.getList(MANAGERS_FIELD, Document.class),
+                MANAGER_ID_FIELD, statistics.getManagers());
+
+        var deltas = new HashMap<String, Long>();
+        addDeltas(deltas, STATUSES_FIELD, statistics.getStatuses(), snapshot.getStatuses());
+        addUserDeltas(deltas, MECHANICS_FIELD, statistics.getMechanics(), snapshot.getMechanics());
+        addUserDeltas(deltas, MANAGERS_FIELD, statistics.getManagers(), snapshot.getManagers());
+        var dailyDeltas = Map.of(
+                CREATED_FIELD, readTotal(result, CREATED_FIELD) - dailySnapshot.getCreated(),
+                COMPLETED_FIELD, readTotal(result, COMPLETED_FIELD) - dailySnapshot.getCompleted(),
+                PAID_FIELD, readTotal(result, PAID_FIELD) - dailySnapshot.getPaid());
+
+        return Mono.when(
+                increment(CURRENT_ID, deltas, OrderStatistics.class),
+                increment(today.toString(), dailyDeltas, DailyOrderStatistics.class),
+                mongoTemplate.upsert(Query.query(Criteria.where(ID_FIELD).is(CURRENT_ID)),
+                        new Update().set("reconciledAt", LocalDateTime.now()), OrderStatistics.class));
+    }
+
+    private void addUserDeltas(Map<String, Long> deltas,
+                               String field,
+                               Map<String, Map<OrderStatus, Long>> recounted,
+                               Map<String, Map<OrderStatus, Long>> snapshot) {
+        var userIds = new HashSet<>(recounted.keySet());
+        userIds.addAll(snapshot.keySet());
+        userIds.forEach(userId -> addDeltas(deltas, field + "." + userId,
+                recounted.getOrDefault(userId, Map.of()), snapshot.getOrDefault(userId, Map.of())));
+    }
+
+    private void addDeltas(Map<String, Long> deltas,
+                           String field,
+                           Map<OrderStatus, Long> recounted,
+                           Map<OrderStatus, Long> snapshot) {
+        for (var status : OrderStatus.values()) {
+            var delta = recounted.getOrDefault(status, 0L) - snapshot.getOrDefault(status, 0L);
+            if (delta != 0) {
+                deltas.put(field + "." + status.name(), delta);
+            }
+        }
+    }
+
+    private void addCounters(Map<String, Long> deltas, Order order, long delta) {
+        var status = order.getStatus().name();
+        deltas.merge(STATUSES_FIELD + "." + status, delta, Long::sum);
+        if (order.getMechanicId() != null) {
+            deltas.merge(MECHANICS_FIELD + "." + order.getMechanicId() + "." + status, delta, Long::sum);
+        }
+        if (order.getManagerId() != null) {
+            deltas.merge(MANAGERS_FIELD + "." + order.getManagerId() + "." + status, delta, Long::sum);
+        }
+    }
+
+    /**
+     * A failed increment fails the order change with it, the transaction is aborted as a whole.
+     */
+    private Mono<Void> increment(Map<String, Long> deltas, Map<String, Long> dailyDeltas) {
+        return increment(CURRENT_ID, deltas, OrderStatistics.class)
+                .then(increment(LocalDate.now().toString(), dailyDeltas, DailyOrderStatistics.class));
+    }
+
+    private Mono<Void> increment(String id, Map<String, Long> deltas, Class<?> type) {
+        var update = new Update();
+        deltas.forEach((field, delta) -> {
+            if (delta != 0) {
+                update.inc(field, delta);
+            }
+        });
+        if (update.getUpdateObject().isEmpty()) {
+            return Mono.empty();
+        }
+
+        return mongoTemplate.upsert(Query.query(Criteria.where(ID_FIELD).is(id)), update,
+                        mongoTemplate.getCollectionName(type))
+                .then();
+    }
+
+    private void readUserCounters(List<Document> groups,
+                                  String userField,
+                                  Map<String, Map<OrderStatus, Long>> counters) {
+        groups.forEach(group -> {
+            var key = group.get(ID_FIELD, Document.class);
+            if (key.getString(STATUS_FIELD) != null) {
+                counters.computeIfAbsent(key.getString(userField), userId -> new EnumMap<>(OrderStatus.class))
+                        .put(OrderStatus.valueOf(key.getString(STATUS_FIELD)), readCount(group));
+            }
+        });
+    }
+
+    private long readTotal(Document result, String field) {
+        var totals = result.getList(field, Document.class);
+
+        return totals.isEmpty() ? 0 : readCount(totals.get(0));
+    }
+
+    private long readCount(Document group) {
+        return ((Number) group.get(COUNT_FIELD)).longValue();
+    }
+}
@@ -0,0 +1,283 @@
+package com.salatin.orderservice.service;
+
+import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderEvent;
+import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.model.OrderStatusUpdate;
+import com.salatin.orderservice.model.dto.response.BulkStatusUpdateResultDto;
+import com.salatin.orderservice.util.OrderResponseCreator;
+import com.salatin.orderservice.util.OrderStateMachine;
+import com.salatin.orderservice.util.TransactionRetry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+/**
+ * Runs status transitions from {@link OrderStateMachine} as conditional updates: the order is
+ * changed only if it is still in one of the expected statuses, in a single round trip.
+ * The status is read separately only when nothing matched, to tell 404 from 409.
+ * Every applied transition is counted in {@link OrderStatisticsService} and the stage it ends
+ * is measured in {@link OrderStageHistogramService}, in the same transaction as the update. Transitions are timed as
+ * {@code order.transitions} tagged by the target status and the outcome. Each update also pushes
+ * the event of the transition to the outbox of the order, to be published by {@link OrderEventRelay}.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class OrderTransitionService {
+    private static final String MANAGER_ID_FIELD = "managerId";
+    private static final String OUTBOX_FIELD = "outbox";
+    private static final String TRANSITION_ID_FIELD = "transitionId";
+    private static final String TRANSITION_METRIC = "order.transitions";
+    private static final String BULK_TRANSITION_METRIC = "order.transitions.bulk";
+
+    private final OrderService orderService;
+    private final OrderStatisticsService orderStatisticsService;
+    private final OrderStageHistogramService orderStageHistogramService;
+    private final MeterRegistry meterRegistry;
+    private final TransactionalOperator transactionalOperator;
+    @Value("${orders.outbox.enabled:true}")
+    private boolean outboxEnabled;
+
+    public Mono<Order> transition(String orderId, OrderStatus target, String actorId) {
+        return transition(orderId, target, actorId, EnumSet.allOf(OrderStatus.class),
+                status -> OrderResponseCreator.createConflictOrderStatusException(status.name()));
+    }
+
+    public Mono<Order> transition(String orderId,
+                                  OrderStatus target,
+                                  String actorId,
+                                  Set<OrderStatus> permittedSources,
+                                  Function<OrderStatus, ResponseStatusException> conflictException) {
+        var attempts = OrderStateMachine.findSourcesByEffects(target).entrySet().stream()
+                .map(entry -> {
+                    var sources = EnumSet.copyOf(entry.getValue());
+                    sources.retainAll(permittedSources);
+                    return new Attempt(sources, createUpdate(target, entry.getKey(), actorId, actorId));
+                })
+                .filter(attempt -> !attempt.sources().isEmpty())
+                .toList();
+
+        return Mono.defer(() -> {
+            var sample = Timer.start(meterRegistry);
+
+            return applyTransition(orderId, target, actorId, attempts, conflictException)
+                    .doOnSuccess(order -> sample.stop(transitionTimer(target, "APPLIED")))
+                    .doOnError(throwable -> sample.stop(transitionTimer(target, outcomeOf(throwable))));
+        });
+    }
+
+    private Mono<Order> applyTransition(String orderId,
+                                   OrderStatus target,
+                                   String actorId,
+                                   List<Attempt> attempts,
+                                   Function<OrderStatus, ResponseStatusException> conflictException) {
+        return transactionalOperator.transactional(applyAttempts(orderId, attempts))
+                .retryWhen(TransactionRetry.onTransientErrors())
+                .switchIfEmpty(Mono.defer(() -> orderService.findStatusById(orderId)
+                        .switchIfEmpty(Mono.error(() ->
+                                OrderResponseCreator.createOrderNotFoundException(orderId)))
+                        .flatMap(status -> {
+                            log.warn("Can't change status of order {} to {} by the user {}. Order is in status {}",
+                                    orderId, target, actorId, status);
+                            return Mono.error(conflictException.apply(status));
+                        })));
+    }
+
+    private Mono<Order> applyAttempts(String orderId, List<Attempt> attempts) {
+        return Flux.fromIterable(attempts)
+                .concatMap(attempt -> orderService.updateStatusIfIn(orderId, attempt.sources(), attempt.update())
+                        .map(previous -> Tuples.of(previous, applyUpdate(previous, attempt.update()))))
+                .next()
+                .flatMap(transition -> recordTransitions(List.of(transition))
+                        .thenReturn(transition.getT2()));
+    }
+
+    /**
+     * Checks every order against the transition table using one read of their statuses and applies
+     * the allowed transitions with one bulk write. Every update carries a token of the request, when
+     * some orders changed in between they are read again and only those carrying the token are
+     * reported as applied and recorded. Managers can only record themselves as the manager of an order.
+     */
+    public Flux<BulkStatusUpdateResultDto> bulkTransition(List<String> orderIds, OrderStatus target,
+                                                          String managerId) {
+        var distinctIds = orderIds.stream().distinct().toList();
+        DistributionSummary.builder(BULK_TRANSITION_METRIC + ".size")
+                .description("Orders requested in one bulk status update")
+                .baseUnit("orders")
+                .tag("to", target.name())
+                .register(meterRegistry)
+                .record(distinctIds.size());
+
+        return Flux.defer(() -> {
+            var sample = Timer.start(meterRegistry);
+
+            return applyBulkTransition(distinctIds, target, managerId)
+                    .doOnComplete(() -> sample.stop(meterRegistry.timer(BULK_TRANSITION_METRIC,
+                            "to", target.name(), "outcome", "SUCCESS")))
+                    .doOnError(throwable -> sample.stop(meterRegistry.timer(BULK_TRANSITION_METRIC,
+                            "to", target.name(), "outcome", "ERROR")));
+        });
+    }
+
+    private Flux<BulkStatusUpdateResultDto> applyBulkTransition(List<String> distinctIds, OrderStatus target,
+                                                                String managerId) {
+        var transitionId = UUID.randomUUID().toString();
+
+        return orderService.findAllWithStatusByIds(distinctIds)
+                .flatMapMany(orders -> {
+                    var statusUpdates = distinctIds.stream()
+                            .filter(orderId -> orders.containsKey(orderId)
+                                    && OrderStateMachine.isAllowed(orders.get(orderId).getStatus(), target))
+                            .map(orderId -> {
+                                var status = orders.get(orderId).getStatus();
+                                var effects = OrderStateMachine.getEffects(status, target);
+                                var actorId = MANAGER_ID_FIELD.equals(effects.actorField()) ? managerId : null;
+                                return new OrderStatusUpdate(orderId, status,
+                                        createUpdate(target, effects, actorId, managerId)
+                                                .set(TRANSITION_ID_FIELD, transitionId));
+                            })
+                            .collect(Collectors.toMap(OrderStatusUpdate::getOrderId, Function.identity()));
+
+                    return transactionalOperator.transactional(
+                                    applyStatusUpdates(distinctIds, target, transitionId, orders, statusUpdates))
+                            .retryWhen(TransactionRetry.onTransientErrors())
+                            .flatMapIterable(results -> results);
+                });
+    }
+
+    private Mono<List<BulkStatusUpdateResultDto>> applyStatusUpdates(List<String> distinctIds,
+                                                                     OrderStatus target,
+                                                                     String transitionId,
+                                                                     Map<String, Order> orders,
+                                                                     Map<String, OrderStatusUpdate> statusUpdates) {
+        return orderService.updateStatuses(List.copyOf(statusUpdates.values()))
+                .flatMap(matched -> matched == statusUpdates.size()
+                        ? Mono.just(Map.<String, Order>of())
+                        : orderService.findAllWithStatusByIds(statusUpdates.keySet()))
+                .flatMap(reread -> {
+                    var results = distinctIds.stream()
+                            .map(orderId -> createResult(orderId, target, transitionId, orders, statusUpdates,
+                                    reread))
+                            .toList();
+                    var transitions = results.stream()
+                            .filter(result -> result.getResult() == BulkStatusUpdateResultDto.Result.APPLIED)
+                            .map(result -> orders.get(result.getOrderId()))
+                            .map(previous -> Tuples.of(previous, applyUpdate(previous,
+                                    statusUpdates.get(previous.getId()).getUpdate())))
+                            .toList();
+
+                    return recordTransitions(transitions)
+                            .thenReturn(results);
+                });
+    }
+
+    private BulkStatusUpdateResultDto createResult(String orderId,
+                                                   OrderStatus target,
+                                                   String transitionId,
+                                                   Map<String, Order> orders,
+                                                   Map<String, OrderStatusUpdate> statusUpdates,
+                                                   Map<String, Order> reread) {
+        if (!orders.containsKey(orderId)) {
+            return new BulkStatusUpdateResultDto(orderId, BulkStatusUpdateResultDto.Result.NOT_FOUND, null);
+        }
+        if (!statusUpdates.containsKey(orderId)) {
+            return new BulkStatusUpdateResultDto(orderId, BulkStatusUpdateResultDto.Result.CONFLICT,
+                    orders.get(orderId).getStatus());
+        }
+
+        if (reread.isEmpty()) {
+            return new BulkStatusUpdateResultDto(orderId, BulkStatusUpdateResultDto.Result.APPLIED, target);
+        }
+        var current = reread.get(orderId);
+        if (current == null) {
+            return new BulkStatusUpdateResultDto(orderId, BulkStatusUpdateResultDto.Result.NOT_FOUND, null);
+        }
+
+        var result = transitionId.equals(current.getTransitionId())
+                ? BulkStatusUpdateResultDto.Result.APPLIED
+                : BulkStatusUpdateResultDto.Result.CONFLICT;
+        return new BulkStatusUpdateResultDto(orderId, result, current.getStatus());
+    }
+
+    private Timer transitionTimer(OrderStatus target, String outcome) {
+        return meterRegistry.timer(TRANSITION_METRIC, "to", target.name(), "outcome", outcome);
+    }
+
+    private static String outcomeOf(Throwable throwable) {
+        if (throwable instanceof ResponseStatusException exception) {
+            return switch (exception.getStatusCode().value()) {
+                case 404 -> "NOT_FOUND";
+                case 409 -> "CONFLICT";
+                default -> "ERROR";
+            };
+        }
+        return "ERROR";
+    }
+
+    private Mono<Void> recordTransitions(List<Tuple2<Order, Order>> transitions) {
+        // one after another, a transaction can't run operations concurrently
+        return orderStatisticsService.recordTransitions(transitions)
+                .then(orderStageHistogramService.recordTransitions(transitions));
+    }
+
+    /**
+     * Conditional updates return the order as it was, the new state is the same update applied to it
+     * and the version every write increments.
+     */
+    private Order applyUpdate(Order previous, Update update) {
+        var order = new Order();
+        BeanUtils.copyProperties(previous, order);
+        order.setVersion(previous.getVersion() == null ? 1 : previous.getVersion() + 1);
+        var orderWrapper = new BeanWrapperImpl(order);
+        update.getUpdateObject().get("$set", Document.class).forEach(orderWrapper::setPropertyValue);
+
+        return order;
+    }
+
+    /**
+     * The actor is recorded in the order only where the transition names one, the event always
+     * carries who made the change.
+     */
+    private Update createUpdate(OrderStatus target, OrderStateMachine.Effects effects, String actorId,
+                                String eventActorId) {
+        var update = new Update().set("status", target);
+
+        if (outboxEnabled) {
+            update.push(OUTBOX_FIELD, OrderEvent.of(OrderEvent.Type.STATUS_CHANGED, target, eventActorId));
+        }
+
+        if (effects.timestampField() != null) {
+            update.set(effects.timestampField(), LocalDateTime.now());
+        }
+        if (effects.actorField() != null && actorId != null) {
+            update.set(effects.actorField(), actorId);
+        }
+        return update;
+    }
+
+    private record Attempt(Set<OrderStatus> sources, Update update) {
+    }
+}
@@ -1,14 +1,44 @@
 package com.salatin.orderservice.service.impl;
 
+import com.salatin.orderservice.model.OrderCursor;
+import com.salatin.orderservice.model.OrderStage;
 import com.salatin.orderservice.model.dto.LogMessage;
 import com.salatin.orderservice.model.Order;
 import com.salatin.orderservice.model.OrderStatus;
+import com.salatin.orderservice.model.OrderStatusUpdate;
 import com.salatin.orderservice.repository.OrderRepository;
+import com.salatin.orderservice.service.OrderCache;
+import com.salatin.orderservice.service.OrderPageCache;
 import com.salatin.orderservice.service.OrderService;
+import com.salatin.orderservice.util.OrderResponseCreator;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -19,70 +49,301 @@ import reactor.core.publisher.Mono;
 @RequiredArgsConstructor
 @Log4j2
 public class OrderServiceImpl implements OrderService {
+    private static final String ID_FIELD = "id";
+    private static final String LOGS_FIELD = "logs";
+    private static final String LOG_ID_FIELD = "logs.logId";
+    private static final String STATUS_FIELD = "status";
+    private static final String CUSTOMER_ID_FIELD = "customerId";
+    private static final String MECHANIC_ID_FIELD = "mechanicId";
+    private static final String MANAGER_ID_FIELD = "managerId";
+    private static final String VERSION_FIELD = "version";
+    private static final String TRANSITION_ID_FIELD = "transitionId";
+
     private final OrderRepository orderRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final OrderCache orderCache;
+    private final OrderPageCache orderPageCache;
+    @Value("${orders.logs.max-size:0}")
+    private int logsMaxSize;
+    @Value("${orders.query.cursor-batch-size:500}")
+    private int cursorBatchSize;
 
     @Override
     public Mono<Order> save(Order order) {
-        return orderRepository.save(order);
+        return orderRepository.save(order)
+                .onErrorMap(OptimisticLockingFailureException.class,
+                        e -> OrderResponseCreator.createConcurrentModificationException(order.getId()))
+                .doOnNext(saved -> orderPageCache.invalidateStatuses(EnumSet.of(saved.getStatus())))
+                .doFinally(signal -> {
+                    if (order.getId() != null) {
+                        orderCache.invalidate(order.getId());
+                    }
+                });
     }
 
     @Override
     public Mono<Order> findById(String id) {
-        return orderRepository.findById(id);
+        return orderCache.get(id, orderRepository::findById);
     }
 
     @Override
-    public Flux<Order> findAll(PageRequest pageRequest) {
-        var firstElement = calculateFirstElement(pageRequest);
+    public <T> Flux<T> findAll(PageRequest pageRequest, Class<T> type) {
+        return findPage(new Criteria(), pageRequest, type);
+    }
 
-        return orderRepository.findAll(pageRequest.getSort())
-            .skip(firstElement)
-            .take(pageRequest.getPageSize());
+    @Override
+    public <T> Flux<T> findAllAfter(OrderCursor cursor, PageRequest pageRequest, Class<T> type) {
+        return findAfter(new Criteria(), cursor, pageRequest, type);
     }
 
     @Override
-    public Flux<Order> findAllByStatus(PageRequest pageRequest, String status) {
-        var firstElement = calculateFirstElement(pageRequest);
-        var statusOptional = getOrderStatus(status);
+    public <T> Flux<T> findAllByStatus(PageRequest pageRequest, String status, Class<T> type) {
+        return getOrderStatus(status)
+            .map(orderStatus -> findPage(Criteria.where(STATUS_FIELD).is(orderStatus), pageRequest, type))
+            .orElseGet(() -> Flux.error(createInvalidStatusException()));
+    }
 
-        return statusOptional.map(
-            orderStatus -> orderRepository.findAllByStatus(orderStatus, pageRequest.getSort())
-            .skip(firstElement)
-            .take(pageRequest.getPageSize()))
-            .orElseGet(() -> Flux.error(
-            new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid order status value")));
+    @Override
+    public <T> Flux<T> findAllByStatusAfter(OrderCursor cursor, PageRequest pageRequest, String status,
+                                            Class<T> type) {
+        return getOrderStatus(status)
+            .map(orderStatus -> findAfter(Criteria.where(STATUS_FIELD).is(orderStatus), cursor, pageRequest,
+                type))
+            .orElseGet(() -> Flux.error(createInvalidStatusException()));
     }
 
     @Override
-    public Flux<Order> findAllByCarId(String carId) {
-        return orderRepository.findAllByCarId(carId);
+    public Mono<Boolean> hasOpenOrderForCar(String carId) {
+        return orderRepository.existsByCarIdAndStatusIn(carId, OrderStatus.openStatuses());
     }
 
     @Override
-    public Flux<Order> findAllByUser(String userId, PageRequest pageRequest) {
-        var firstElement = calculateFirstElement(pageRequest);
+    public <T> Flux<T> findAllByUser(String userId, PageRequest pageRequest, Class<T> type) {
+        return findPage(Criteria.where(CUSTOMER_ID_FIELD).is(userId), pageRequest, type);
+    }
 
-        return orderRepository.findAllByCustomerId(userId, pageRequest.getSort())
-            .skip(firstElement)
-            .take(pageRequest.getPageSize());
+    @Override
+    public <T> Flux<T> findAllByUserAfter(String userId, OrderCursor cursor, PageRequest pageRequest,
+                                          Class<T> type) {
+        return findAfter(Criteria.where(CUSTOMER_ID_FIELD).is(userId), cursor, pageRequest, type);
     }
 
     @Override
-    public void addLogToOrder(String orderId, LogMessage logMessage) {
-        orderRepository.findById(orderId)
-                .flatMap(order -> {
-                    order.getLogs().add(logMessage);
-                    return orderRepository.save(order);
+    public Mono<OrderStatus> findStatusById(String id) {
+        var query = Query.query(Criteria.where(ID_FIELD).is(id));
+        query.fields().include(STATUS_FIELD);
+
+        return mongoTemplate.findOne(query, Order.class)
+                .mapNotNull(Order::getStatus);
+    }
+
+    /**
+     * Reads nothing but the version, or takes it from the cached order. Orders without one
+     * are reported as version 0.
+     */
+    @Override
+    public Mono<Long> findVersionById(String id) {
+        var query = Query.query(Criteria.where(ID_FIELD).is(id));
+        query.fields().include(VERSION_FIELD);
+
+        return orderCache.getIfPresent(id)
+                .switchIfEmpty(Mono.defer(() -> mongoTemplate.findOne(query, Order.class)))
+                .map(order -> order.getVersion() == null ? 0L : order.getVersion());
+    }
+
+    @Override
+    public Mono<Order> updateStatusIfIn(String id, Set<OrderStatus> expectedStatuses, Update update) {
+        var query = Query.query(Criteria.where(ID_FIELD).is(id).and(STATUS_FIELD).in(expectedStatuses));
+
+        // the order before the update tells which status it has left, the template increments the version
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(false), Order.class)
+                .doOnNext(previous -> orderPageCache.invalidateStatuses(
+                        EnumSet.of(previous.getStatus(), readTargetStatus(update))))
+                .doFinally(signal -> orderCache.invalidate(id));
+    }
+
+    @Override
+    public Mono<Map<String, Order>> findAllWithStatusByIds(Collection<String> ids) {
+        var query = Query.query(Criteria.where(ID_FIELD).in(ids));
+        query.fields().include(STATUS_FIELD, MECHANIC_ID_FIELD, MANAGER_ID_FIELD, VERSION_FIELD)
+                .include(TRANSITION_ID_FIELD)
+                .include(OrderStage.TIMESTAMP_FIELDS);
+
+        return mongoTemplate.find(query, Order.class)
+                .filter(order -> order.getStatus() != null)
+                .collectMap(Order::getId);
+    }
+
+    /**
+     * Applies all updates as one unordered bulkWrite and returns how many orders matched
+     * their expected status. The driver doesn't know about the version, so it is incremented here.
+     */
+    @Override
+    public Mono<Long> updateStatuses(List<OrderStatusUpdate> statusUpdates) {
+        if (statusUpdates.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        var converter = mongoTemplate.getConverter();
+        var entity = converter.getMappingContext().getRequiredPersistentEntity(Order.class);
+        var queryMapper = new QueryMapper(converter);
+        var updateMapper = new UpdateMapper(converter);
+        var updates = statusUpdates.stream()
+                .map(statusUpdate -> new UpdateOneModel<Document>(
+                        queryMapper.getMappedObject(Query.query(Criteria.where(ID_FIELD).is(statusUpdate.getOrderId())
+                                .and(STATUS_FIELD).is(statusUpdate.getExpectedStatus())).getQueryObject(), entity),
+                        incrementVersion(updateMapper.getMappedObject(statusUpdate.getUpdate().getUpdateObject(),
+                                entity))))
+                .toList();
+
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Order.class))
+                .flatMap(collection -> Mono.from(
+                        collection.bulkWrite(updates, new BulkWriteOptions().ordered(false))))
+                .map(result -> (long) result.getMatchedCount())
+                .doOnNext(matched -> orderPageCache.invalidateStatuses(statusUpdates.stream()
+                        .flatMap(statusUpdate -> Stream.of(statusUpdate.getExpectedStatus(),
+                                readTargetStatus(statusUpdate.getUpdate())))
+                        .collect(Collectors.toCollection(() -> EnumSet.noneOf(OrderStatus.class)))))
+                .doFinally(signal -> orderCache.invalidateAll(statusUpdates.stream()
+                        .map(OrderStatusUpdate::getOrderId)
+                        .toList()));
+    }
+
+    @Override
+    public Optional<OrderCursor> createCursor(Object order, Sort sort) {
+        var sortOrder = sort.iterator().next();
+        var orderWrapper = new BeanWrapperImpl(order);
+
+        if (!orderWrapper.isReadableProperty(sortOrder.getProperty())) {
+            return Optional.empty();
+        }
+
+        var value = mongoTemplate.getConverter()
+                .convertToMongoType(orderWrapper.getPropertyValue(sortOrder.getProperty()));
+
+        return Optional.of(new OrderCursor(sortOrder.getProperty(), sortOrder.getDirection(),
+                value, (String) orderWrapper.getPropertyValue(ID_FIELD)));
+    }
+
+    /**
+     * Writes a whole batch of log messages as one unordered bulkWrite with a single
+     * $push $each per order, so a burst costs one round trip instead of one per message.
+     * A retried bulkWrite may have been applied to some orders already: the push of an order is
+     * atomic, so an order that has any of the message ids of its push is skipped.
+     */
+    @Override
+    public Mono<Void> addLogsToOrders(Map<String, List<LogMessage>> logsByOrderId) {
+        if (logsByOrderId.isEmpty()) {
+            return Mono.empty();
+        }
+
+        var converter = mongoTemplate.getConverter();
+        var updates = logsByOrderId.entrySet().stream()
+                .map(entry -> new UpdateOneModel<Document>(
+                        Filters.and(Filters.eq("_id", converter.convertId(entry.getKey(), ObjectId.class)),
+                                Filters.nin(LOG_ID_FIELD, readLogIds(entry.getValue()))),
+                        incrementVersion(new Document("$push",
+                                new Document(LOGS_FIELD, createPushEach(entry.getValue()))))))
+                .toList();
+
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Order.class))
+                .flatMap(collection -> Mono.from(
+                        collection.bulkWrite(updates, new BulkWriteOptions().ordered(false))))
+                .doOnNext(result -> {
+                    if (result.getMatchedCount() < updates.size()) {
+                        log.warn("Only {} of {} orders found to save log messages, or they had them already",
+                                result.getMatchedCount(), updates.size());
+                    }
                 })
-                .doOnSuccess(savedOrder -> log.info("A new message {} saved to order {}",
-                        logMessage,  orderId))
-                .doOnError(throwable -> log.warn("Failed to save log message to order {}",
-                        orderId))
-                .subscribe();
+                .doFinally(signal -> orderCache.invalidateAll(logsByOrderId.keySet()))
+                .then();
+    }
+
+    private OrderStatus readTargetStatus(Update update) {
+        return (OrderStatus) update.getUpdateObject().get("$set", Document.class).get(STATUS_FIELD);
+    }
+
+    private List<String> readLogIds(List<LogMessage> logMessages) {
+        return logMessages.stream()
+                .map(LogMessage::getLogId)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private Document incrementVersion(Document update) {
+        return update.append("$inc", new Document(VERSION_FIELD, 1));
+    }
+
+    private Document createPushEach(List<LogMessage> logMessages) {
+        var converter = mongoTemplate.getConverter();
+        var pushEach = new Document("$each", logMessages.stream()
+                .map(converter::convertToMongoType)
+                .toList());
+
+        if (logsMaxSize > 0) {
+            pushEach.append("$slice", -logsMaxSize);
+        }
+        return pushEach;
+    }
+
+    private <T> Flux<T> findPage(Criteria criteria, PageRequest pageRequest, Class<T> type) {
+        return find(new Query(criteria).with(pageRequest), type);
+    }
+
+    private <T> Flux<T> findAfter(Criteria criteria, OrderCursor cursor, PageRequest pageRequest,
+                                  Class<T> type) {
+        var query = new Query(new Criteria().andOperator(criteria, createKeysetCriteria(cursor)))
+                .with(pageRequest.getSort())
+                .limit(pageRequest.getPageSize());
+
+        return find(query, type);
+    }
+
+    /**
+     * Projections such as {@link com.salatin.orderservice.model.OrderSummary} restrict
+     * the fields read from Mongo to their own properties. Documents are fetched from the cursor
+     * in batches as they are requested downstream, so large listings can be streamed.
+     */
+    private <T> Flux<T> find(Query query, Class<T> type) {
+        return mongoTemplate.query(Order.class)
+                .as(type)
+                .matching(query.cursorBatchSize(cursorBatchSize))
+                .all();
+    }
+
+    /**
+     * Matches everything that sorts after the cursor position. Missing values sort as null,
+     * which comes first in ascending and last in descending order.
+     */
+    private Criteria createKeysetCriteria(OrderCursor cursor) {
+        var field = cursor.getSortField();
+        var value = cursor.getValue();
+        var id = cursor.getId();
+        var ascending = cursor.getDirection().isAscending();
+
+        if (ID_FIELD.equals(field)) {
+            return ascending ? Criteria.where(ID_FIELD).gt(id) : Criteria.where(ID_FIELD).lt(id);
+        }
+
+        var sameValue = ascending
+                ? Criteria.where(field).is(value).and(ID_FIELD).gt(id)
+                : Criteria.where(field).is(value).and(ID_FIELD).lt(id);
+
+        if (value == null) {
+            return ascending
+                    ? new Criteria().orOperator(Criteria.where(field).ne(null), sameValue)
+                    : sameValue;
+        }
+
+        return ascending
+                ? new Criteria().orOperator(Criteria.where(field).gt(value), sameValue)
+                : new Criteria().orOperator(Criteria.where(field).lt(value),
+                        Criteria.where(field).is(null), sameValue);
     }
 
-    private int calculateFirstElement(PageRequest pageRequest) {
-        return pageRequest.getPageNumber() * pageRequest.getPageSize();
+    private ResponseStatusException createInvalidStatusException() {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid order status value");
     }
 
     private Optional<OrderStatus> getOrderStatus(String status) {
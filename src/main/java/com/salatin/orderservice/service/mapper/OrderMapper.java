@@ -1,8 +1,13 @@
 package com.salatin.orderservice.service.mapper;
 
+import com.salatin.orderservice.model.DailyOrderStatistics;
 import com.salatin.orderservice.model.Order;
+import com.salatin.orderservice.model.OrderStatistics;
+import com.salatin.orderservice.model.OrderSummary;
 import com.salatin.orderservice.model.dto.request.OrderCreateRequestDto;
 import com.salatin.orderservice.model.dto.response.OrderResponseDto;
+import com.salatin.orderservice.model.dto.response.OrderStatisticsResponseDto;
+import com.salatin.orderservice.model.dto.response.OrderSummaryResponseDto;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 
@@ -13,4 +18,11 @@ public interface OrderMapper {
     Order toModel(OrderCreateRequestDto requestDto);
 
     OrderResponseDto toDto(Order order);
+
+    OrderSummaryResponseDto toSummaryDto(OrderSummary orderSummary);
+
+    @Mapping(target = "createdToday", source = "dailyStatistics.created")
+    @Mapping(target = "completedToday", source = "dailyStatistics.completed")
+    @Mapping(target = "paidToday", source = "dailyStatistics.paid")
+    OrderStatisticsResponseDto toStatisticsDto(OrderStatistics statistics, DailyOrderStatistics dailyStatistics);
 }
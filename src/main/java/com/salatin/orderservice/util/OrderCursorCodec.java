@@ -0,0 +1,51 @@
+package com.salatin.orderservice.util;
+
+import com.salatin.orderservice.model.OrderCursor;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Turns an {@link OrderCursor} into the opaque {@code after} token handed to clients and back.
+ * The token is URL-safe base64 of an extended JSON document, so dates and ids keep their Mongo types.
+ */
+public final class OrderCursorCodec {
+    private static final String FIELD = "f";
+    private static final String DIRECTION = "d";
+    private static final String VALUE = "v";
+    private static final String ID = "i";
+
+    private OrderCursorCodec() {}
+
+    public static String encode(OrderCursor cursor) {
+        var document = new Document(FIELD, cursor.getSortField())
+                .append(DIRECTION, cursor.getDirection().name())
+                .append(VALUE, cursor.getValue())
+                .append(ID, cursor.getId());
+
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(document.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static OrderCursor decode(String token) {
+        try {
+            var json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            var document = Document.parse(json);
+
+            var sortField = document.getString(FIELD);
+            var id = document.getString(ID);
+            if (sortField == null || id == null) {
+                throw new IllegalArgumentException("Cursor misses sort field or id");
+            }
+
+            return new OrderCursor(sortField,
+                    Sort.Direction.valueOf(document.getString(DIRECTION)),
+                    document.get(VALUE), id);
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor value");
+        }
+    }
+}
@@ -12,6 +12,21 @@ public final class OrderResponseCreator {
                 "Can't find an order with id: " + orderId);
     }
 
+    public static ResponseStatusException createCarInRepairConflictException() {
+        return new ResponseStatusException(HttpStatus.CONFLICT,
+                "This car is already in the process of repairing");
+    }
+
+    public static ResponseStatusException createConcurrentModificationException(String orderId) {
+        return new ResponseStatusException(HttpStatus.CONFLICT,
+                "Order " + orderId + " was changed by someone else, reload it and try again");
+    }
+
+    public static ResponseStatusException createResumeTokenExpiredException() {
+        return new ResponseStatusException(HttpStatus.GONE,
+                "Changes after this event are no longer available, reload orders and follow them again");
+    }
+
     public static ResponseStatusException createConflictOrderStatusException(String orderStatus) {
         return new ResponseStatusException(HttpStatus.CONFLICT,
                 "You can't do it. Order currently is in status " + orderStatus);
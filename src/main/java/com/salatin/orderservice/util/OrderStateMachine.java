@@ -0,0 +1,65 @@
+package com.salatin.orderservice.util;
+
+import com.salatin.orderservice.model.OrderStatus;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Allowed order status transitions. Each transition names the timestamp field stamped
+ * and the field that stores the user making the change, both optional.
+ */
+public final class OrderStateMachine {
+    private static final Map<OrderStatus, Map<OrderStatus, Effects>> TRANSITIONS =
+            new EnumMap<>(OrderStatus.class);
+
+    static {
+        allow(OrderStatus.CREATED, OrderStatus.SUBMITTED, "submittedAt", "managerId");
+        allow(OrderStatus.CREATED, OrderStatus.CANCELED, null, null);
+        allow(OrderStatus.SUBMITTED, OrderStatus.CAR_RECEIVED, "carReceivedAt", null);
+        allow(OrderStatus.SUBMITTED, OrderStatus.CANCELED, null, null);
+        allow(OrderStatus.CAR_RECEIVED, OrderStatus.IN_PROGRESS, "startedWorksAt", "mechanicId");
+        allow(OrderStatus.CAR_RECEIVED, OrderStatus.CANCELED, null, null);
+        allow(OrderStatus.IN_PROGRESS, OrderStatus.SUSPENDED, null, null);
+        allow(OrderStatus.IN_PROGRESS, OrderStatus.COMPLETED, "finishedWorksAt", null);
+        allow(OrderStatus.IN_PROGRESS, OrderStatus.CANCELED, null, null);
+        allow(OrderStatus.SUSPENDED, OrderStatus.IN_PROGRESS, null, null);
+        allow(OrderStatus.SUSPENDED, OrderStatus.CANCELED, null, null);
+        allow(OrderStatus.COMPLETED, OrderStatus.PAYED, "orderPaidAt", null);
+    }
+
+    private OrderStateMachine() {}
+
+    public static boolean isAllowed(OrderStatus from, OrderStatus to) {
+        return TRANSITIONS.getOrDefault(from, Collections.emptyMap()).containsKey(to);
+    }
+
+    public static Effects getEffects(OrderStatus from, OrderStatus to) {
+        return TRANSITIONS.getOrDefault(from, Collections.emptyMap()).get(to);
+    }
+
+    /**
+     * Statuses the target can be reached from, grouped by the effects of the transition,
+     * so that every group can be applied with one conditional update.
+     */
+    public static Map<Effects, Set<OrderStatus>> findSourcesByEffects(OrderStatus to) {
+        return TRANSITIONS.entrySet().stream()
+                .filter(entry -> entry.getValue().containsKey(to))
+                .collect(Collectors.groupingBy(entry -> entry.getValue().get(to),
+                        LinkedHashMap::new,
+                        Collectors.mapping(Map.Entry::getKey,
+                                Collectors.toCollection(() -> EnumSet.noneOf(OrderStatus.class)))));
+    }
+
+    private static void allow(OrderStatus from, OrderStatus to, String timestampField, String actorField) {
+        TRANSITIONS.computeIfAbsent(from, status -> new EnumMap<>(OrderStatus.class))
+                .put(to, new Effects(timestampField, actorField));
+    }
+
+    public record Effects(String timestampField, String actorField) {
+    }
+}
@@ -0,0 +1,38 @@
+package com.salatin.orderservice.util;
+
+import com.salatin.orderservice.model.OrderCursor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public final class PageRequestCreator {
+    private static final String ID_FIELD = "id";
+
+    private PageRequestCreator() {}
+
+    /**
+     * Sorts by the requested field and then by id, so orders with equal values
+     * keep a stable position between pages.
+     */
+    public static PageRequest create(Integer page,
+                                     Integer size,
+                                     String sortByField,
+                                     String direction) {
+        try {
+            var sortDirection = Sort.Direction.valueOf(direction.toUpperCase());
+            var sort = Sort.by(sortDirection, sortByField);
+            if (!ID_FIELD.equals(sortByField)) {
+                sort = sort.and(Sort.by(sortDirection, ID_FIELD));
+            }
+
+            return PageRequest.of(page, size, sort);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    public static PageRequest create(OrderCursor cursor, Integer size) {
+        return create(0, size, cursor.getSortField(), cursor.getDirection().name());
+    }
+}
@@ -1,5 +1,7 @@
 package com.salatin.orderservice.util;
 
+import com.salatin.orderservice.model.Role;
+import com.salatin.orderservice.model.RoleJwtAuthenticationToken;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 
 public final class RoleChecker {
@@ -7,7 +9,17 @@ public final class RoleChecker {
     private RoleChecker() {}
 
     public static boolean hasRoleManager(JwtAuthenticationToken authenticationToken) {
+        return hasRole(authenticationToken, Role.MANAGER);
+    }
+
+    /**
+     * Tokens built by the service carry their roles, other tokens are checked by their authorities.
+     */
+    public static boolean hasRole(JwtAuthenticationToken authenticationToken, Role role) {
+        if (authenticationToken instanceof RoleJwtAuthenticationToken roleToken) {
+            return roleToken.hasRole(role);
+        }
         return authenticationToken.getAuthorities().stream()
-                .anyMatch(a -> "ROLE_manager".equals(a.getAuthority()));
+                .anyMatch(a -> role.getAuthority().equals(a.getAuthority()));
     }
 }
@@ -0,0 +1,32 @@
+package com.salatin.orderservice.util;
+
+import com.mongodb.MongoException;
+import java.time.Duration;
+import reactor.util.retry.Retry;
+
+public final class TransactionRetry {
+    private static final int MAX_RETRIES = 5;
+    private static final Duration FIRST_BACKOFF = Duration.ofMillis(10);
+
+    private TransactionRetry() {}
+
+    /**
+     * Runs a transaction again when it was aborted by a write conflict with a concurrent one,
+     * as the driver's withTransaction does. Other errors and the last failure are passed on as is.
+     */
+    public static Retry onTransientErrors() {
+        return Retry.backoff(MAX_RETRIES, FIRST_BACKOFF)
+                .filter(TransactionRetry::isTransient)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private static boolean isTransient(Throwable throwable) {
+        for (var cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException mongoException
+                    && mongoException.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}